@@ -0,0 +1,77 @@
+package example;
+
+import org.arabeyes.itl.prayertime.ExtremeMethod;
+import org.arabeyes.itl.prayertime.Method;
+import org.arabeyes.itl.prayertime.StandardMethod;
+import org.arabeyes.itl.prayertime.TimetableGenerator;
+
+import java.util.Random;
+import java.util.TimeZone;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Generates timetables of many locations over some years with 1, 2, 4, ... threads up to the
+ * number of processors, and prints the time and the speedup over a single thread.
+ * Usage: TimetableBenchmark [locations] [years]
+ */
+public class TimetableBenchmark {
+
+    public static void main(String[] args) throws InterruptedException {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        int years = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        int days = years * 365 + years / 4;
+
+        System.out.println("=== TIMETABLE GENERATOR (" + n + " locations, " + days + " days) ===");
+
+        String[] zoneIds = TimeZone.getAvailableIDs();
+        double[] lat = new double[n];
+        double[] lon = new double[n];
+        double[] seaLevel = new double[n];
+        TimeZone[] zones = new TimeZone[n];
+        Random random = new Random(1);
+        for (int i = 0; i < n; ++i) {
+            lat[i] = random.nextDouble() * 120 - 60;
+            lon[i] = random.nextDouble() * 360 - 180;
+            seaLevel[i] = random.nextInt(1000);
+            zones[i] = TimeZone.getTimeZone(zoneIds[random.nextInt(zoneIds.length)]);
+        }
+        Method method = Method.fromStandard(StandardMethod.EGYPT_SURVEY)
+                .setExtremeMethod(ExtremeMethod.GOOD_INVALID);
+
+        /* Warm up */
+        generate(1, method, days, lat, lon, seaLevel, zones);
+
+        int processors = Runtime.getRuntime().availableProcessors();
+        long single = 0;
+        for (int threads = 1; ; threads = Math.min(threads * 2, processors)) {
+            long elapsed = generate(threads, method, days, lat, lon, seaLevel, zones);
+            if (threads == 1)
+                single = elapsed;
+            System.out.printf("%d thread(s)\t%d ms\t%.2fx\n", threads, elapsed / 1000000,
+                    (double) single / elapsed);
+            if (threads == processors)
+                break;
+        }
+    }
+
+    /**
+     * @return elapsed time in nanoseconds
+     */
+    private static long generate(int threads, Method method, int days, double[] lat,
+                                 double[] lon, double[] seaLevel, TimeZone[] zones)
+            throws InterruptedException {
+        int n = lat.length;
+        int[] times = new int[n * days * 6];
+        int[] extremes = new int[n * days];
+        long start = System.nanoTime();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            TimetableGenerator.generate(executor, method, 2017, 1, 1, days, lat, lon, seaLevel,
+                    zones, times, extremes);
+        } finally {
+            executor.shutdown();
+        }
+        return System.nanoTime() - start;
+    }
+}
@@ -0,0 +1,60 @@
+/* Copyright (c) 2017, Fikrul Arif
+ * (under LGPL license - see COPYING file)
+ */
+package org.arabeyes.itl.prayertime;
+
+import org.arabeyes.itl.prayertime.AstroModule.AstroDay;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bounded cache of geocentric day values ({@link AstroDay}), shared by all locations and threads.
+ * These values depend only on the astronomical Julian day passed to the ephemeris, which already
+ * includes the time zone offset and delta-t, so the exact Julian day is used as the key and a
+ * cached value is always identical to a computed one.
+ * <p>
+ * The cache is a direct-mapped table without locking: each slot holds an immutable entry which
+ * is replaced as a whole, so a reader sees either a complete entry or an entry of another day.
+ */
+final class AstroDayCache {
+
+    private static final int SIZE_BITS = 10;
+
+    private final AtomicReferenceArray<Entry> slots =
+            new AtomicReferenceArray<Entry>(1 << SIZE_BITS);
+
+    /**
+     * @return cached value of the day, or null if not cached
+     */
+    AstroDay get(double jd) {
+        long key = Double.doubleToLongBits(jd);
+        Entry e = slots.get(index(key));
+        return e != null && e.key == key ? e.day : null;
+    }
+
+    /**
+     * @param day value of the day, must not be modified afterwards
+     */
+    void put(double jd, AstroDay day) {
+        long key = Double.doubleToLongBits(jd);
+        slots.set(index(key), new Entry(key, day));
+    }
+
+    private static int index(long key) {
+        /* The keys of the time zones only differ in a few bits of the mantissa, so all of them
+         * are mixed into the index (finalizer of MurmurHash3) */
+        long h = (key ^ (key >>> 33)) * 0xFF51AFD7ED558CCDL;
+        h = (h ^ (h >>> 33)) * 0xC4CEB9FE1A85EC53L;
+        return (int) (h >>> (64 - SIZE_BITS));
+    }
+
+    private static final class Entry {
+        final long key;
+        final AstroDay day;
+
+        Entry(long key, AstroDay day) {
+            this.key = key;
+            this.day = day;
+        }
+    }
+}
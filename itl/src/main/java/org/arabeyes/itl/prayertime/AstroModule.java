@@ -11,15 +11,16 @@
  */
 package org.arabeyes.itl.prayertime;
 
-import org.arabeyes.itl.prayertime.PrayerModule.Location;
+import org.arabeyes.itl.prayertime.PrayerModule.CompiledLocation;
 import org.arabeyes.itl.prayertime.PrayerModule.SDate;
 
+import static java.lang.Math.abs;
 import static java.lang.Math.acos;
 import static java.lang.Math.asin;
-import static java.lang.Math.atan;
 import static java.lang.Math.atan2;
 import static java.lang.Math.cos;
 import static java.lang.Math.floor;
+import static java.lang.Math.max;
 import static java.lang.Math.pow;
 import static java.lang.Math.sin;
 import static java.lang.Math.tan;
@@ -30,11 +31,12 @@ class AstroModule {
     /* Defaults */
     static final int INVALID_TRIGGER = 1;
     private static final double PI = 3.1415926535898;
-    private static final double CENTER_OF_SUN_ANGLE = -0.833370; /* ..of sun's upper limb angle */
-    private static final double EARTH_RADIUS = 6378140.0; /* Equatorial radius in meters */
+    static final double CENTER_OF_SUN_ANGLE = -0.833370; /* ..of sun's upper limb angle */
+    static final double EARTH_RADIUS = 6378140.0; /* Equatorial radius in meters */
     private static final double ALTITUDE_REFRACTION = 0.0347;
     static final double DEG_TO_10_BASE = 1 / 15.0;
 
+
     /* UTILITIES */
 
     static double DEG_TO_RAD(double A) {
@@ -47,6 +49,7 @@ class AstroModule {
 
     static class Astro {
         double jd;      /* Astronomical Julian day (for local time with Delta-t) */
+        Ephemeris eph;  /* Source of the values, null if not filled yet */
         double[] dec = new double[3];  /* Declination */
         double[] ra = new double[3];   /* Right Ascensions */
         double[] sid = new double[3];  /* Apparent sidereal time */
@@ -58,15 +61,29 @@ class AstroModule {
 
         Astro(Astro src) {
             this.jd = src.jd;
-            this.dec = src.dec;
-            this.ra = src.ra;
-            this.sid = src.sid;
-            this.dra = src.dra;
-            this.rsum = src.rsum;
+            this.eph = src.eph;
+            this.dec = src.dec.clone();
+            this.ra = src.ra.clone();
+            this.sid = src.sid.clone();
+            this.dra = src.dra.clone();
+            this.rsum = src.rsum.clone();
+        }
+
+        /**
+         * Same as the copy constructor, but into this instance
+         */
+        void set(Astro src) {
+            this.jd = src.jd;
+            this.eph = src.eph;
+            System.arraycopy(src.dec, 0, this.dec, 0, 3);
+            System.arraycopy(src.ra, 0, this.ra, 0, 3);
+            System.arraycopy(src.sid, 0, this.sid, 0, 3);
+            System.arraycopy(src.dra, 0, this.dra, 0, 3);
+            System.arraycopy(src.rsum, 0, this.rsum, 0, 3);
         }
     }
 
-    private static class AstroDay {
+    static class AstroDay {
         double dec;
         double ra;
         double sidtime;
@@ -82,11 +99,11 @@ class AstroModule {
     private AstroModule() {
     }
 
-    static double getSunrise(Location loc, Astro tastro) {
+    static double getSunrise(CompiledLocation loc, Astro tastro) {
         return getRiseSet(loc, tastro, Type.SUNRISE);
     }
 
-    static double getSunset(Location loc, Astro tastro) {
+    static double getSunset(CompiledLocation loc, Astro tastro) {
         return getRiseSet(loc, tastro, Type.SUNSET);
     }
 
@@ -117,21 +134,20 @@ class AstroModule {
         return 24.0 * (M - (H / 360.0));
     }
 
-    private static double getRiseSet(Location loc, Astro tastro, Type type) {
+    private static double getRiseSet(CompiledLocation loc, Astro tastro, Type type) {
         /* p. 101 */
         double lhour, M, sidG, ra0, ra2;
-        double A, B, H, sunAlt, delM, tH, rDec, rLat, rB;
+        double A, B, H, sunAlt, delM, tH, rDec, rB;
         double part1, part2, part3;
 
         rDec = DEG_TO_RAD(tastro.dec[1]);
-        rLat = DEG_TO_RAD(loc.degreeLat);
 
         ra0 = tastro.ra[0];
         ra2 = tastro.ra[2];
 
         /* Compute the hour angle */
-        part1 = sin(DEG_TO_RAD(CENTER_OF_SUN_ANGLE)) - (sin(rLat) * sin(rDec));
-        part2 = cos(rLat) * cos(rDec);
+        part1 = sin(DEG_TO_RAD(CENTER_OF_SUN_ANGLE)) - (loc.sinLat * sin(rDec));
+        part2 = loc.cosLat * cos(rDec);
         part3 = part1 / part2;
 
         if (part3 < -INVALID_TRIGGER || part3 > INVALID_TRIGGER)
@@ -177,24 +193,24 @@ class AstroModule {
         tH = DEG_TO_RAD(H) - tastro.dra[1];
 
         /* Airless Sun's altitude at local horizontal coordinates (p. 93, 13.6) */
-        sunAlt = RAD_TO_DEG(asin(sin(rLat) * sin(rB)
-                + cos(rLat) * cos(rB)
+        sunAlt = RAD_TO_DEG(asin(loc.sinLat * sin(rB)
+                + loc.cosLat * cos(rB)
                 * cos(tH)));
 
         sunAlt += getRefraction(loc, sunAlt);
 
         /* (p. 103) */
-        delM = (sunAlt - CENTER_OF_SUN_ANGLE) / (360.0 * cos(rB) * cos(rLat)
+        delM = (sunAlt - CENTER_OF_SUN_ANGLE) / (360.0 * cos(rB) * loc.cosLat
                 * sin(tH));
 
         return (M + delM) * 24.0;
 
     }
 
-    private static double getRefraction(Location loc, double sunAlt) {
+    private static double getRefraction(CompiledLocation loc, double sunAlt) {
         double part1, part2;
 
-        part1 = (loc.pressure / 1010.0) * (283 / (273 + loc.temperature));
+        part1 = loc.refraction;
         part2 = 1.02 / (RAD_TO_DEG(tan(DEG_TO_RAD(sunAlt + (10.3 / (sunAlt + 5.11))))) + 0.0019279);
 
         return (part1 * part2) / 60.0;
@@ -642,14 +658,124 @@ class AstroModule {
             {2, -1, 0, 2, 2}
     };
 
+    /**
+     * Periodic terms of the tables above in structure-of-arrays form: term i has amplitude a[i],
+     * phase b[i], and frequency c[i]. The terms of power n of JM are start[n] <= i < start[n + 1].
+     */
+    private static final class Series {
+        final double[] a, b, c;
+        final int[] start;
+
+        /**
+         * @param threshold terms with smaller amplitude are dropped
+         */
+        Series(double threshold, double[][]... powers) {
+            int count = 0;
+            start = new int[powers.length + 1];
+            for (int n = 0; n < powers.length; n++) {
+                start[n] = count;
+                for (double[] term : powers[n])
+                    if (abs(term[0]) >= threshold)
+                        count++;
+            }
+            start[powers.length] = count;
+
+            a = new double[count];
+            b = new double[count];
+            c = new double[count];
+            for (int n = 0, i = 0; n < powers.length; n++) {
+                for (double[] term : powers[n]) {
+                    if (abs(term[0]) < threshold)
+                        continue;
+                    a[i] = term[0];
+                    b[i] = term[1];
+                    c[i] = term[2];
+                    i++;
+                }
+            }
+        }
+    }
+
+    /**
+     * Terms of the series used by computeAstroDay, optionally truncated by amplitude. The tables
+     * are sorted by decreasing amplitude, so the truncated ones keep the leading terms.
+     */
+    static final class Terms {
+        final Series l, b, r;
+        /* The PN and COEFF tables in structure-of-arrays form */
+        final double[] psi0, psi1, eps0, eps1;
+        final double[] nD, nM, nM1, nF, nO;
+        /* Use Nutation instead of the nutation terms */
+        final boolean interpolateNutation;
+
+        Terms(double threshold, double nutThreshold) {
+            this(threshold, nutThreshold, false);
+        }
+
+        /**
+         * @param threshold           amplitude (in 1e-8 radian or AU) below which the L, B, and R
+         *                            terms are dropped
+         * @param nutThreshold        amplitude (in 0.0001 arc-second) below which the nutation
+         *                            terms are dropped
+         * @param interpolateNutation whether the nutation is interpolated from the full series
+         *                            (see {@link Nutation}) instead of evaluated from the terms
+         */
+        Terms(double threshold, double nutThreshold, boolean interpolateNutation) {
+            this.interpolateNutation = interpolateNutation;
+            l = new Series(threshold, L0, L1, L2, L3, L4, L5);
+            b = new Series(threshold, B0, B1);
+            r = new Series(threshold, R0, R1, R2, R3, R4);
+
+            int count = 0;
+            for (double[] term : PN)
+                if (max(abs(term[0]), abs(term[2])) >= nutThreshold)
+                    count++;
+            psi0 = new double[count];
+            psi1 = new double[count];
+            eps0 = new double[count];
+            eps1 = new double[count];
+            nD = new double[count];
+            nM = new double[count];
+            nM1 = new double[count];
+            nF = new double[count];
+            nO = new double[count];
+            for (int i = 0, j = 0; i < PN.length; i++) {
+                if (max(abs(PN[i][0]), abs(PN[i][2])) < nutThreshold)
+                    continue;
+                psi0[j] = PN[i][0];
+                psi1[j] = PN[i][1];
+                eps0[j] = PN[i][2];
+                eps1[j] = PN[i][3];
+                nD[j] = COEFF[i][0];
+                nM[j] = COEFF[i][1];
+                nM1[j] = COEFF[i][2];
+                nF[j] = COEFF[i][3];
+                nO[j] = COEFF[i][4];
+                j++;
+            }
+        }
+    }
+
+    static final Terms FULL_TERMS = new Terms(0, 0);
+    /* See the SERIES_* constants of Ephemeris for the resulting errors */
+    static final Terms INTERPOLATED_NUTATION_TERMS = new Terms(0, 0, true);
+    static final Terms HIGH_TERMS = new Terms(50, 0, true);
+    static final Terms MINUTE_TERMS = new Terms(200, 1000);
+
     /**
      * Fills the structure "astro" with a list of 3-day values, then checks and
      * updates these values if cached. The variable "tastro/topAstro" holds the
      * topocentric values of the same structure.
      */
-    static void getAstroValuesByDay(double julianDay, Location loc, Astro astro,
-                                    Astro topAstro) {
-        final AstroDay ad = new AstroDay();
+    static void getAstroValuesByDay(double julianDay, CompiledLocation loc, Ephemeris eph,
+                                    Astro astro, Astro topAstro) {
+        AstroDay ad;
+
+        if (astro.eph != eph) {
+            /* Values of another ephemeris can't be reused */
+            astro.eph = eph;
+            astro.jd = Double.NaN;
+        }
 
         if (astro.jd == julianDay - 1) {
             /* Copy cached values */
@@ -664,7 +790,7 @@ class AstroModule {
             astro.rsum[0] = astro.rsum[1];
             astro.rsum[1] = astro.rsum[2];
             /* Compute next day values */
-            computeAstroDay(julianDay + 1, ad);
+            ad = getAstroDay(julianDay + 1, eph);
             astro.ra[2] = ad.ra;
             astro.dec[2] = ad.dec;
             astro.sid[2] = ad.sidtime;
@@ -683,7 +809,7 @@ class AstroModule {
             astro.rsum[2] = astro.rsum[1];
             astro.rsum[1] = astro.rsum[0];
             /* Compute previous day values */
-            computeAstroDay(julianDay - 1, ad);
+            ad = getAstroDay(julianDay - 1, eph);
             astro.ra[0] = ad.ra;
             astro.dec[0] = ad.dec;
             astro.sid[0] = ad.sidtime;
@@ -693,19 +819,19 @@ class AstroModule {
 
         } else if (astro.jd != julianDay) {
             /* Compute 3 day values */
-            computeAstroDay(julianDay - 1, ad);
+            ad = getAstroDay(julianDay - 1, eph);
             astro.ra[0] = ad.ra;
             astro.dec[0] = ad.dec;
             astro.sid[0] = ad.sidtime;
             astro.dra[0] = ad.dra;
             astro.rsum[0] = ad.rsum;
-            computeAstroDay(julianDay, ad);
+            ad = getAstroDay(julianDay, eph);
             astro.ra[1] = ad.ra;
             astro.dec[1] = ad.dec;
             astro.sid[1] = ad.sidtime;
             astro.dra[1] = ad.dra;
             astro.rsum[1] = ad.rsum;
-            computeAstroDay(julianDay + 1, ad);
+            ad = getAstroDay(julianDay + 1, eph);
             astro.ra[2] = ad.ra;
             astro.dec[2] = ad.dec;
             astro.sid[2] = ad.sidtime;
@@ -719,138 +845,84 @@ class AstroModule {
 
     }
 
-    private static void computeAstroDay(double JD, AstroDay astroday) {
+    /**
+     * Returns the geocentric values of the day from the ephemeris. The values are shared by all
+     * locations and threads through the ephemeris cache, so the returned object must not be
+     * modified.
+     */
+    private static AstroDay getAstroDay(double JD, Ephemeris eph) {
+        AstroDay ad = eph.cache.get(JD);
+        if (ad == null) {
+            ad = new AstroDay();
+            eph.compute(JD, ad);
+            eph.cache.put(JD, ad);
+        }
+        return ad;
+    }
+
+    static void computeAstroDay(double JD, AstroDay astroday) {
+        computeAstroDay(JD, astroday, FULL_TERMS);
+    }
+
+    static void computeAstroDay(double JD, AstroDay astroday, Terms terms) {
 
-        int i;
         double R, Gg, rGg, G;
 
         double tL, L;
         double tB, B;
 
-        double D, M, M1, F, O;
-
-        double U, E0, E, rE, lambda, rLambda, V0, V;
+        double U, E0, E, rE, sinE, cosE, lambda, rLambda, V0, V;
 
         double RAn, RAd, RA, DEC;
 
-        double B0sum = 0, B1sum = 0;
-        double R0sum = 0, R1sum = 0, R2sum = 0, R3sum = 0, R4sum;
-        double L0sum = 0, L1sum = 0, L2sum = 0, L3sum = 0, L4sum = 0, L5sum;
-
-        double PNsum = 0, psi = 0, epsilon = 0;
+        double[] nutation = PrayerModule.getScratch().nutation;
         double deltaPsi, deltaEps;
 
         double JC = (JD - 2451545) / 36525.0;
         double JM = JC / 10.0;
-        double JM2 = pow(JM, 2);
-        double JM3 = pow(JM, 3);
-        double JM4 = pow(JM, 4);
-        double JM5 = pow(JM, 5);
-
-        /* FIXIT: By default, the getJulianDay function returns JDE rather then JD,
-         * make sure this is accurate, and works in last-day-of-year
-         * circumstances.  */
-        double JDE = JD;
-
-        double T = (JDE - 2451545) / 36525.0;
-
-        for (i = 0; i < 64; i++)
-            L0sum += L0[i][0] * cos(L0[i][1] + L0[i][2] * JM);
-        for (i = 0; i < 34; i++)
-            L1sum += L1[i][0] * cos(L1[i][1] + L1[i][2] * JM);
-        for (i = 0; i < 20; i++)
-            L2sum += L2[i][0] * cos(L2[i][1] + L2[i][2] * JM);
-        for (i = 0; i < 7; i++)
-            L3sum += L3[i][0] * cos(L3[i][1] + L3[i][2] * JM);
-        for (i = 0; i < 3; i++)
-            L4sum += L4[i][0] * cos(L4[i][1] + L4[i][2] * JM);
-        L5sum = L5[0][0] * cos(L5[0][1] + L5[0][2] * JM);
-
-
-        tL = (L0sum + (L1sum * JM) + (L2sum * JM2)
-                + (L3sum * JM3) + (L4sum * JM4)
-                + (L5sum * JM5)) / pow(10, 8);
 
+        tL = sumSeries(terms.l, JM) / 1e8;
         L = limitAngle(RAD_TO_DEG(tL));
 
-        for (i = 0; i < 5; i++)
-            B0sum += B0[i][0] * cos(B0[i][1] + B0[i][2] * JM);
-        for (i = 0; i < 2; i++)
-            B1sum += B1[i][0] * cos(B1[i][1] + B1[i][2] * JM);
-
-
-        tB = (B0sum + (B1sum * JM)) / pow(10, 8);
+        tB = sumSeries(terms.b, JM) / 1e8;
         B = RAD_TO_DEG(tB);
 
-
-        for (i = 0; i < 40; i++)
-            R0sum += R0[i][0] * cos(R0[i][1] + R0[i][2] * JM);
-        for (i = 0; i < 10; i++)
-            R1sum += R1[i][0] * cos(R1[i][1] + R1[i][2] * JM);
-        for (i = 0; i < 6; i++)
-            R2sum += R2[i][0] * cos(R2[i][1] + R2[i][2] * JM);
-        for (i = 0; i < 2; i++)
-            R3sum += R3[i][0] * cos(R3[i][1] + R3[i][2] * JM);
-        R4sum = R4[0][0] * cos(R4[0][1] + R4[0][2] * JM);
-
-        R = (R0sum + (R1sum * JM) + (R2sum * JM2)
-                + (R3sum * JM3) + (R4sum * JM4)) / pow(10, 8);
+        R = sumSeries(terms.r, JM) / 1e8;
 
         G = limitAngle((L + 180));
         Gg = -B;
         rGg = DEG_TO_RAD(Gg);
-        /* Compute the fundamental arguments (p. 144) */
-        D = 297.85036 + (445267.111480 * T) - (0.0019142 * pow(T, 2)) +
-                (pow(T, 3) / 189474.0);
-        M = 357.52772 + (35999.050340 * T) - (0.0001603 * pow(T, 2)) -
-                (pow(T, 3) / 300000.0);
-        M1 = 134.96298 + (477198.867398 * T) + (0.0086972 * pow(T, 2)) +
-                (pow(T, 3) / 56250.0);
-        F = 93.27191 + (483202.017538 * T) - (0.0036825 * pow(T, 2)) +
-                (pow(T, 3) / 327270.0);
-        O = 125.04452 - (1934.136261 * T) + (0.0020708 * pow(T, 2)) +
-                (pow(T, 3) / 450000.0);
-        /* Add the terms (pp. 144-6) */
-        for (i = 0; i < 63; i++) {
-            PNsum += D * COEFF[i][0];
-            PNsum += M * COEFF[i][1];
-            PNsum += M1 * COEFF[i][2];
-            PNsum += F * COEFF[i][3];
-            PNsum += O * COEFF[i][4];
-            psi += (PN[i][0] + JC * PN[i][1]) * sin(DEG_TO_RAD(PNsum));
-            epsilon += (PN[i][2] + JC * PN[i][3]) * cos(DEG_TO_RAD(PNsum));
-            PNsum = 0;
-        }
-
-        deltaPsi = psi / 36000000.0;
-        /* Nutation in obliquity */
-        deltaEps = epsilon / 36000000.0;
-
-
-        /* The obliquity of the ecliptic (p. 147, 22.3) */
+        /* Nutation in longitude and obliquity */
+        if (terms.interpolateNutation)
+            Nutation.interpolate(JD, nutation);
+        else
+            computeNutation(JD, terms, nutation);
+        deltaPsi = nutation[0];
+        deltaEps = nutation[1];
+
+        /* The obliquity of the ecliptic (p. 147, 22.3), in Horner's form */
         U = JM / 10.0;
-        E0 = 84381.448 - 4680.93 * U - 1.55 * pow(U, 2) + 1999.25 * pow(U, 3)
-                - 51.38 * pow(U, 4) - 249.67 * pow(U, 5) - 39.05 * pow(U, 6) + 7.12
-                * pow(U, 7) + 27.87 * pow(U, 8) + 5.79 * pow(U, 9) + 2.45 * pow(U, 10);
+        E0 = 84381.448 + U * (-4680.93 + U * (-1.55 + U * (1999.25 + U * (-51.38 +
+                U * (-249.67 + U * (-39.05 + U * (7.12 + U * (27.87 + U * (5.79 +
+                U * 2.45)))))))));
         /* Real/true obliquity (p. 147) */
         E = E0 / 3600.0 + deltaEps;
         rE = DEG_TO_RAD(E);
+        sinE = sin(rE);
+        cosE = cos(rE);
 
         lambda = G + deltaPsi + (-20.4898 / (3600.0 * R));
         rLambda = DEG_TO_RAD(lambda);
 
-        /* Mean Sidereal time (p. 88) */
-        V0 = 280.46061837 + 360.98564736629 * (JD - 2451545) +
-                0.000387933 * pow(JC, 2) - pow(JC, 3) / 38710000.0;
+        V0 = getMeanSiderealTime(JD);
         /* Apparent sidereal time */
-        V = limitAngle(V0) + deltaPsi * cos(rE);
+        V = limitAngle(V0) + deltaPsi * cosE;
 
-        RAn = sin(rLambda) * cos(rE) - tan(rGg) * sin(rE);
+        RAn = sin(rLambda) * cosE - tan(rGg) * sinE;
         RAd = cos(rLambda);
         RA = limitAngle(RAD_TO_DEG(atan2(RAn, RAd)));
 
-        DEC = asin(sin(rGg) * cos(rE) + cos(rGg) * sin(rE) *
-                sin(rLambda));
+        DEC = asin(sin(rGg) * cosE + cos(rGg) * sinE * sin(rLambda));
 
         astroday.ra = RA;
         astroday.dec = DEC;
@@ -860,12 +932,75 @@ class AstroModule {
 
     }
 
-    private static void computeTopAstro(Location loc, Astro astro, Astro topAstro) {
-        int i;
-        double lHour, SP, rlHour, rLat;
-        double tU, tpCos, tpSin, tRA0, tRA, tDEC;
+    /**
+     * Nutation in longitude (nutation[0]) and in obliquity (nutation[1]) in degrees
+     */
+    static void computeNutation(double JD, Terms terms, double[] nutation) {
+        int i, n;
+        double D, M, M1, F, O;
+        double arg, psi = 0, epsilon = 0;
 
-        rLat = DEG_TO_RAD(loc.degreeLat);
+        double JC = (JD - 2451545) / 36525.0;
+
+        /* FIXIT: By default, the getJulianDay function returns JDE rather then JD,
+         * make sure this is accurate, and works in last-day-of-year
+         * circumstances.  */
+        double JDE = JD;
+
+        double T = (JDE - 2451545) / 36525.0;
+        double T2 = T * T;
+        double T3 = T2 * T;
+
+        /* Compute the fundamental arguments (p. 144) */
+        D = 297.85036 + (445267.111480 * T) - (0.0019142 * T2) + (T3 / 189474.0);
+        M = 357.52772 + (35999.050340 * T) - (0.0001603 * T2) - (T3 / 300000.0);
+        M1 = 134.96298 + (477198.867398 * T) + (0.0086972 * T2) + (T3 / 56250.0);
+        F = 93.27191 + (483202.017538 * T) - (0.0036825 * T2) + (T3 / 327270.0);
+        O = 125.04452 - (1934.136261 * T) + (0.0020708 * T2) + (T3 / 450000.0);
+        /* Add the terms (pp. 144-6) */
+        for (i = 0, n = terms.psi0.length; i < n; i++) {
+            arg = DEG_TO_RAD(D * terms.nD[i] + M * terms.nM[i] + M1 * terms.nM1[i] +
+                    F * terms.nF[i] + O * terms.nO[i]);
+            psi += (terms.psi0[i] + JC * terms.psi1[i]) * sin(arg);
+            epsilon += (terms.eps0[i] + JC * terms.eps1[i]) * cos(arg);
+        }
+
+        nutation[0] = psi / 36000000.0;
+        nutation[1] = epsilon / 36000000.0;
+    }
+
+    /**
+     * Sum of a flattened series: the periodic terms of each power of JM are summed, then combined
+     * as a polynomial of JM in Horner's form.
+     */
+    private static double sumSeries(Series series, double JM) {
+        final double[] a = series.a, b = series.b, c = series.c;
+        final int[] start = series.start;
+        double result = 0, sum;
+        for (int n = start.length - 2; n >= 0; n--) {
+            sum = 0;
+            for (int i = start[n], end = start[n + 1]; i < end; i++)
+                sum += a[i] * cos(b[i] + c[i] * JM);
+            result = result * JM + sum;
+        }
+        return result;
+    }
+
+    /**
+     * Mean sidereal time (p. 88)
+     */
+    static double getMeanSiderealTime(double JD) {
+        double JC = (JD - 2451545) / 36525.0;
+        return 280.46061837 + 360.98564736629 * (JD - 2451545) +
+                0.000387933 * pow(JC, 2) - pow(JC, 3) / 38710000.0;
+    }
+
+    private static void computeTopAstro(CompiledLocation loc, Astro astro, Astro topAstro) {
+        int i;
+        double lHour, SP, rlHour;
+        double tRA0, tRA, tDEC;
+        /* (p. 82), computed once for the location */
+        double tpCos = loc.tpCos, tpSin = loc.tpSin;
 
         for (i = 0; i < 3; i++) {
             lHour = limitAngle(astro.sid[i] + loc.degreeLong - astro.ra[i]);
@@ -873,14 +1008,6 @@ class AstroModule {
 
             SP = DEG_TO_RAD(8.794 / (3600 * astro.rsum[i]));
 
-            /* (p. 82, with b/a = 0.99664719) */
-            tU = atan(0.99664719 * tan(rLat));
-
-            tpSin = 0.99664719 * sin(tU) + (loc.seaLevel / EARTH_RADIUS) *
-                    sin(rLat);
-
-            tpCos = cos(tU) + (loc.seaLevel / EARTH_RADIUS) * cos(rLat);
-
             /* (p. 297, 40.2) */
             tRA0 = (((-tpCos) * sin(SP) * sin(rlHour)) / (cos(astro.dec[i]) -
                     tpCos * sin(SP) * cos(rlHour)));
@@ -902,7 +1029,16 @@ class AstroModule {
 
     }
 
-    private static double limitAngle(double L) {
+    /**
+     * 4-point Lagrange interpolation of the values at points -1, 0, 1, 2, at point p (0 <= p <= 1)
+     */
+    static double interpolate4(double p, double y0, double y1, double y2, double y3) {
+        double pm1 = p - 1, pm2 = p - 2, pp1 = p + 1;
+        return -p * pm1 * pm2 / 6.0 * y0 + pp1 * pm1 * pm2 / 2.0 * y1 +
+                -pp1 * p * pm2 / 2.0 * y2 + pp1 * p * pm1 / 6.0 * y3;
+    }
+
+    static double limitAngle(double L) {
         double F;
         L /= 360.0;
         F = L - floor(L);
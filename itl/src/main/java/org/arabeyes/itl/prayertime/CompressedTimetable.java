@@ -0,0 +1,490 @@
+/* Copyright (c) 2017, Fikrul Arif
+ * (under LGPL license - see COPYING file)
+ */
+package org.arabeyes.itl.prayertime;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * {@link Timetable} in a compact binary form, for storing or shipping many years of times. The
+ * times of consecutive days differ only slightly, so each time is stored as the difference from
+ * the previous day, bit-packed with the smallest width which fits all differences of a block of
+ * {@link #BLOCK_DAYS} days. A year of minute-rounded times takes about 1.2-1.4 KB (a
+ * {@link Timetable} takes about 4.6 KB).
+ * <p>
+ * The blocks are indexed, so a day can be read without decoding the days before its block. The
+ * last decoded block is kept, so reading consecutive days is fast too.
+ * <p>
+ * Format (big-endian, all integers in varint unless stated):
+ * <pre>
+ * header: magic "ITLC" (4 bytes), version (1 byte), start year (zigzag), start month, start day,
+ *         days, unit (1 byte, 60 for minutes or 1 for seconds), block days, block count,
+ *         offset of each block from the end of the header (4 bytes each)
+ * block:  for each of the 6 times: first value + 1, minimum difference (zigzag), bit width;
+ *         extreme flag (1 byte, 1 if any time of the block is extreme);
+ *         bits, for each day after the first: for each time, the difference minus the minimum;
+ *         then if the extreme flag is set, for each day: 6 extreme bits
+ * </pre>
+ * Instances are immutable and thread-safe.
+ */
+@SuppressWarnings("WeakerAccess")
+public final class CompressedTimetable {
+
+    /**
+     * Number of days of each block
+     */
+    public static final int BLOCK_DAYS = 64;
+
+    private static final int MAGIC = 0x49544c43; /* "ITLC" */
+    private static final int VERSION = 1;
+    private static final int TIMES_PER_DAY = 6;
+    private static final TimeType[] TIME_TYPES = TimeType.values();
+    private static final int READ_CHUNK = 8192;
+
+    private final byte[] data;
+    private final int startYear;
+    private final int startMonth;
+    private final int startDay;
+    private final int days;
+    private final int unit;
+    private final int blockDays;
+    private final int[] blockOffsets; /* Absolute positions in "data" */
+
+    private volatile Block lastBlock;
+
+    /**
+     * @param data encoded timetable, see {@link #toByteArray()}
+     * @throws IllegalArgumentException if the data is not valid
+     */
+    public CompressedTimetable(byte[] data) {
+        this.data = data;
+        try {
+            int[] pos = {0};
+            if (readInt(data, pos) != MAGIC || (data[pos[0]++] & 0xff) != VERSION)
+                throw new IllegalArgumentException("Unknown format");
+            startYear = zigzagDecode(readVarint(data, pos));
+            startMonth = readVarint(data, pos);
+            startDay = readVarint(data, pos);
+            days = readVarint(data, pos);
+            unit = data[pos[0]++] & 0xff;
+            blockDays = readVarint(data, pos);
+            int blocks = readVarint(data, pos);
+            if ((unit != 1 && unit != 60) || days < 0 || blockDays <= 0 ||
+                    blocks != (int) (((long) days + blockDays - 1) / blockDays))
+                throw new IllegalArgumentException("Invalid header");
+            blockOffsets = new int[blocks];
+            for (int i = 0; i < blocks; ++i)
+                blockOffsets[i] = readInt(data, pos);
+            for (int i = 0; i < blocks; ++i)
+                blockOffsets[i] += pos[0];
+            /* Each block must fit before the next one, so that decoding never reads outside */
+            for (int i = 0; i < blocks; ++i) {
+                int limit = i + 1 < blocks ? blockOffsets[i + 1] : data.length;
+                if (blockOffsets[i] < pos[0] || blockOffsets[i] >= limit ||
+                        getBlockEnd(i) > limit)
+                    throw new IllegalArgumentException("Invalid block " + i);
+            }
+        } catch (ArrayIndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("Truncated data");
+        }
+    }
+
+    /**
+     * Reads the encoded timetable written by {@link #writeTo(OutputStream)}.
+     *
+     * @throws IOException if reading fails, or the length or the data is not valid
+     */
+    public static CompressedTimetable readFrom(InputStream in) throws IOException {
+        DataInputStream din = new DataInputStream(in);
+        int length = din.readInt();
+        if (length < 0)
+            throw new IOException("Invalid length: " + length);
+        /* The length may be garbage, so the buffer only grows with the bytes actually read */
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(Math.min(length, READ_CHUNK));
+        byte[] chunk = new byte[READ_CHUNK];
+        for (int remaining = length; remaining > 0; ) {
+            int n = din.read(chunk, 0, Math.min(remaining, READ_CHUNK));
+            if (n < 0)
+                throw new EOFException("Truncated data, " + remaining + " of " + length +
+                        " bytes missing");
+            buffer.write(chunk, 0, n);
+            remaining -= n;
+        }
+        try {
+            return new CompressedTimetable(buffer.toByteArray());
+        } catch (IllegalArgumentException e) {
+            throw new IOException(e.getMessage(), e);
+        }
+    }
+
+    public static CompressedTimetable encode(Timetable timetable) {
+        int days = timetable.getDays();
+        boolean minutes = true;
+        for (int d = 0; d < days && minutes; ++d) {
+            for (int i = 0; i < TIMES_PER_DAY; ++i) {
+                int t = timetable.getSecondOfDay(d, TIME_TYPES[i]);
+                if (t != PrayerTime.INVALID && t % 60 != 0) {
+                    minutes = false;
+                    break;
+                }
+            }
+        }
+        int unit = minutes ? 60 : 1;
+        int blocks = (days + BLOCK_DAYS - 1) / BLOCK_DAYS;
+
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        int[] offsets = new int[blocks];
+        for (int b = 0; b < blocks; ++b) {
+            offsets[b] = body.size();
+            encodeBlock(timetable, unit, b * BLOCK_DAYS,
+                    Math.min(BLOCK_DAYS, days - b * BLOCK_DAYS), body);
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(body.size() + 32 + blocks * 4);
+        writeInt(out, MAGIC);
+        out.write(VERSION);
+        writeVarint(out, zigzagEncode(timetable.getStartYear()));
+        writeVarint(out, timetable.getStartMonth());
+        writeVarint(out, timetable.getStartDay());
+        writeVarint(out, days);
+        out.write(unit);
+        writeVarint(out, BLOCK_DAYS);
+        writeVarint(out, blocks);
+        for (int offset : offsets)
+            writeInt(out, offset);
+        byte[] bytes = body.toByteArray();
+        out.write(bytes, 0, bytes.length);
+        return new CompressedTimetable(out.toByteArray());
+    }
+
+    private static void encodeBlock(Timetable timetable, int unit, int first, int count,
+                                    ByteArrayOutputStream out) {
+        int[] values = new int[count * TIMES_PER_DAY];
+        boolean extreme = false;
+        for (int d = 0; d < count; ++d) {
+            for (int i = 0; i < TIMES_PER_DAY; ++i) {
+                int t = timetable.getSecondOfDay(first + d, TIME_TYPES[i]);
+                values[d * TIMES_PER_DAY + i] = t == PrayerTime.INVALID ? -1 : t / unit;
+                extreme |= timetable.isExtreme(first + d, TIME_TYPES[i]);
+            }
+        }
+
+        int[] min = new int[TIMES_PER_DAY];
+        int[] width = new int[TIMES_PER_DAY];
+        for (int i = 0; i < TIMES_PER_DAY; ++i) {
+            int lo = 0, hi = 0;
+            for (int d = 1; d < count; ++d) {
+                int delta = values[d * TIMES_PER_DAY + i] - values[(d - 1) * TIMES_PER_DAY + i];
+                if (d == 1 || delta < lo)
+                    lo = delta;
+                if (d == 1 || delta > hi)
+                    hi = delta;
+            }
+            min[i] = lo;
+            width[i] = 32 - Integer.numberOfLeadingZeros(hi - lo);
+            writeVarint(out, values[i] + 1);
+            writeVarint(out, zigzagEncode(lo));
+            out.write(width[i]);
+        }
+        out.write(extreme ? 1 : 0);
+
+        BitWriter bits = new BitWriter(out);
+        for (int d = 1; d < count; ++d) {
+            for (int i = 0; i < TIMES_PER_DAY; ++i) {
+                int delta = values[d * TIMES_PER_DAY + i] - values[(d - 1) * TIMES_PER_DAY + i];
+                bits.write(delta - min[i], width[i]);
+            }
+        }
+        if (extreme) {
+            for (int d = 0; d < count; ++d) {
+                for (int i = 0; i < TIMES_PER_DAY; ++i)
+                    bits.write(timetable.isExtreme(first + d, TIME_TYPES[i]) ? 1 : 0, 1);
+            }
+        }
+        bits.flush();
+    }
+
+    /**
+     * @return the whole timetable, decoded sequentially
+     */
+    public Timetable decode() {
+        int[] times = new int[days * TIMES_PER_DAY];
+        int[] extremes = new int[days];
+        for (int b = 0; b < blockOffsets.length; ++b) {
+            Block block = decodeBlock(b);
+            System.arraycopy(block.times, 0, times, b * blockDays * TIMES_PER_DAY,
+                    block.times.length);
+            System.arraycopy(block.extremes, 0, extremes, b * blockDays, block.extremes.length);
+        }
+        return new Timetable(startYear, startMonth, startDay, times, extremes);
+    }
+
+    private Block getBlock(int number) {
+        Block block = lastBlock;
+        if (block == null || block.number != number) {
+            block = decodeBlock(number);
+            lastBlock = block;
+        }
+        return block;
+    }
+
+    /**
+     * @return position after the block, from its widths and extreme flag
+     * @throws IllegalArgumentException if a width is not valid
+     */
+    private long getBlockEnd(int number) {
+        int count = Math.min(blockDays, days - number * blockDays);
+        int[] pos = {blockOffsets[number]};
+        long bits = 0;
+        for (int i = 0; i < TIMES_PER_DAY; ++i) {
+            readVarint(data, pos);
+            readVarint(data, pos);
+            int width = data[pos[0]++] & 0xff;
+            if (width > 32)
+                throw new IllegalArgumentException("Invalid bit width: " + width);
+            bits += (long) width * (count - 1);
+        }
+        if (data[pos[0]++] != 0)
+            bits += count * TIMES_PER_DAY;
+        return pos[0] + (bits + 7) / 8;
+    }
+
+    private Block decodeBlock(int number) {
+        int count = Math.min(blockDays, days - number * blockDays);
+        Block block = new Block(number, count);
+        int[] pos = {blockOffsets[number]};
+
+        int[] value = new int[TIMES_PER_DAY];
+        int[] min = new int[TIMES_PER_DAY];
+        int[] width = new int[TIMES_PER_DAY];
+        for (int i = 0; i < TIMES_PER_DAY; ++i) {
+            value[i] = readVarint(data, pos) - 1;
+            min[i] = zigzagDecode(readVarint(data, pos));
+            width[i] = data[pos[0]++] & 0xff;
+        }
+        boolean extreme = data[pos[0]++] != 0;
+
+        BitReader bits = new BitReader(data, pos[0]);
+        for (int d = 0; d < count; ++d) {
+            for (int i = 0; i < TIMES_PER_DAY; ++i) {
+                if (d > 0)
+                    value[i] += bits.read(width[i]) + min[i];
+                block.times[d * TIMES_PER_DAY + i] = value[i] == -1 ? PrayerTime.INVALID :
+                        value[i] * unit;
+            }
+        }
+        if (extreme) {
+            for (int d = 0; d < count; ++d) {
+                for (int i = 0; i < TIMES_PER_DAY; ++i)
+                    block.extremes[d] |= bits.read(1) << i;
+            }
+        }
+        return block;
+    }
+
+    public int getStartYear() {
+        return startYear;
+    }
+
+    /**
+     * @return month of the first day (1-12)
+     */
+    public int getStartMonth() {
+        return startMonth;
+    }
+
+    public int getStartDay() {
+        return startDay;
+    }
+
+    /**
+     * @return number of days
+     */
+    public int getDays() {
+        return days;
+    }
+
+    /**
+     * @see Timetable#getDayIndex(int, int, int)
+     */
+    public int getDayIndex(int year, int month, int day) {
+        return Timetable.toEpochDay(year, month, day) -
+                Timetable.toEpochDay(startYear, startMonth, startDay);
+    }
+
+    /**
+     * @see Timetable#getSecondOfDay(int, TimeType)
+     */
+    public int getSecondOfDay(int day, TimeType type) {
+        checkIndex(day, type);
+        return getBlock(day / blockDays).times[day % blockDays * TIMES_PER_DAY + type.ordinal()];
+    }
+
+    /**
+     * @see Timetable#isExtreme(int, TimeType)
+     */
+    public boolean isExtreme(int day, TimeType type) {
+        checkIndex(day, type);
+        return (getBlock(day / blockDays).extremes[day % blockDays] & (1 << type.ordinal())) != 0;
+    }
+
+    /**
+     * @see Timetable#getPrayerTimes(int)
+     */
+    public PrayerTime[] getPrayerTimes(int day) {
+        checkIndex(day, TimeType.FAJR);
+        Block block = getBlock(day / blockDays);
+        int d = day % blockDays;
+        PrayerTime[] result = new PrayerTime[TIMES_PER_DAY];
+        for (int i = 0; i < TIMES_PER_DAY; ++i)
+            result[i] = new PrayerTime(block.times[d * TIMES_PER_DAY + i],
+                    (block.extremes[d] & (1 << i)) != 0);
+        return result;
+    }
+
+    private void checkIndex(int day, TimeType type) {
+        if (day < 0 || day >= days)
+            throw new IndexOutOfBoundsException("Day: " + day + ", days: " + days);
+        if (type.ordinal() >= TIMES_PER_DAY)
+            throw new IndexOutOfBoundsException("Type: " + type);
+    }
+
+    /**
+     * @return encoded timetable, a copy
+     */
+    public byte[] toByteArray() {
+        return data.clone();
+    }
+
+    /**
+     * Writes the length and the encoded timetable, see {@link #readFrom(InputStream)}.
+     */
+    public void writeTo(OutputStream out) throws IOException {
+        out.write(data.length >>> 24);
+        out.write(data.length >>> 16);
+        out.write(data.length >>> 8);
+        out.write(data.length);
+        out.write(data);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return this == o || (o instanceof CompressedTimetable &&
+                Arrays.equals(data, ((CompressedTimetable) o).data));
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(data);
+    }
+
+    private static int zigzagEncode(int n) {
+        return (n << 1) ^ (n >> 31);
+    }
+
+    private static int zigzagDecode(int n) {
+        return (n >>> 1) ^ -(n & 1);
+    }
+
+    private static void writeVarint(ByteArrayOutputStream out, int n) {
+        while ((n & ~0x7f) != 0) {
+            out.write((n & 0x7f) | 0x80);
+            n >>>= 7;
+        }
+        out.write(n);
+    }
+
+    private static int readVarint(byte[] data, int[] pos) {
+        int result = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = data[pos[0]++];
+            result |= (b & 0x7f) << shift;
+            if (b >= 0)
+                return result;
+        }
+    }
+
+    private static void writeInt(ByteArrayOutputStream out, int n) {
+        out.write(n >>> 24);
+        out.write(n >>> 16);
+        out.write(n >>> 8);
+        out.write(n);
+    }
+
+    private static int readInt(byte[] data, int[] pos) {
+        int p = pos[0];
+        pos[0] += 4;
+        return (data[p] & 0xff) << 24 | (data[p + 1] & 0xff) << 16 | (data[p + 2] & 0xff) << 8 |
+                (data[p + 3] & 0xff);
+    }
+
+    private static final class Block {
+        final int number;
+        final int[] times;    /* Second of day */
+        final int[] extremes; /* Extreme status of each day, bit i for the i-th time */
+
+        Block(int number, int count) {
+            this.number = number;
+            this.times = new int[count * TIMES_PER_DAY];
+            this.extremes = new int[count];
+        }
+    }
+
+    private static final class BitWriter {
+        private final ByteArrayOutputStream out;
+        private long buffer;
+        private int count;
+
+        BitWriter(ByteArrayOutputStream out) {
+            this.out = out;
+        }
+
+        /**
+         * @param width 0-32
+         */
+        void write(int value, int width) {
+            buffer = (buffer << width) | (value & ((1L << width) - 1));
+            count += width;
+            while (count >= 8) {
+                count -= 8;
+                out.write((int) (buffer >>> count));
+            }
+        }
+
+        void flush() {
+            if (count > 0)
+                out.write((int) (buffer << (8 - count)));
+            count = 0;
+        }
+    }
+
+    private static final class BitReader {
+        private final byte[] data;
+        private int pos;
+        private long buffer;
+        private int count;
+
+        BitReader(byte[] data, int pos) {
+            this.data = data;
+            this.pos = pos;
+        }
+
+        /**
+         * @param width 0-32
+         */
+        int read(int width) {
+            while (count < width) {
+                buffer = (buffer << 8) | (data[pos++] & 0xff);
+                count += 8;
+            }
+            count -= width;
+            return (int) ((buffer >>> count) & ((1L << width) - 1));
+        }
+    }
+}
@@ -0,0 +1,93 @@
+/* Copyright (c) 2017, Fikrul Arif
+ * (under LGPL license - see COPYING file)
+ */
+package org.arabeyes.itl.prayertime;
+
+import org.arabeyes.itl.prayertime.AstroModule.AstroDay;
+
+/**
+ * Source of the sun's geocentric position (right ascension, declination, sidereal time, and
+ * radius vector) used in the calculation.
+ */
+@SuppressWarnings("WeakerAccess")
+public enum Ephemeris {
+    /**
+     * Full evaluation of the VSOP87 subset and nutation series for each day (default).
+     */
+    SERIES {
+        @Override
+        void compute(double jd, AstroDay ad) {
+            AstroModule.computeAstroDay(jd, ad);
+        }
+    },
+    /**
+     * {@link #SERIES} with the nutation interpolated from the full series evaluated every 2 days,
+     * which is about a quarter cheaper. The interpolation error is at most 0.012 arc-second in
+     * longitude and 0.005 in obliquity.
+     */
+    SERIES_INTERPOLATED_NUTATION {
+        @Override
+        void compute(double jd, AstroDay ad) {
+            AstroModule.computeAstroDay(jd, ad, AstroModule.INTERPOLATED_NUTATION_TERMS);
+        }
+    },
+    /**
+     * Truncated {@link #SERIES}, keeping the L, B, and R terms with amplitude of at least 50e-8
+     * (102 of 195 terms), with the nutation of {@link #SERIES_INTERPOLATED_NUTATION}. More than
+     * twice as cheap as {@link #SERIES}. The maximum error over years 1900-2200, checked every 6
+     * hours, is 0.71 arc-second in right ascension, 0.37 in declination, and 0.01 in sidereal
+     * time.
+     */
+    SERIES_HIGH {
+        @Override
+        void compute(double jd, AstroDay ad) {
+            AstroModule.computeAstroDay(jd, ad, AstroModule.HIGH_TERMS);
+        }
+    },
+    /**
+     * Truncated {@link #SERIES}, keeping the L, B, and R terms with amplitude of at least 200e-8
+     * and the nutation terms of at least 0.1 arc-second (53 of 195 and 5 of 63 terms). About 4
+     * times cheaper than {@link #SERIES}. The maximum error over years 1900-2200, checked every 6
+     * hours, is 2.65 arc-second in right ascension, 1.06 in declination, and 0.25 in sidereal
+     * time. This moves Zuhr by less than 0.2 second, and the other times by less than 1 second
+     * up to latitude 60 as long as the sun's hour angle at the time is between 12 and 168 degrees
+     * (closer to 0 or 180, e.g. Fajr and Ishaa just before becoming invalid in extreme latitudes,
+     * any error in declination is magnified).
+     */
+    SERIES_MINUTE {
+        @Override
+        void compute(double jd, AstroDay ad) {
+            AstroModule.computeAstroDay(jd, ad, AstroModule.MINUTE_TERMS);
+        }
+    },
+    /**
+     * Interpolation of daily values precomputed by {@link #SERIES} for years 1900-2200, falling
+     * back to {@link #SERIES} outside that range. The values differ from {@link #SERIES} by less
+     * than 0.002 arc-second, which is far below the precision of the calculated times.
+     */
+    TABLE {
+        @Override
+        void compute(double jd, AstroDay ad) {
+            if (!EphemerisTable.getInstance().compute(jd, ad))
+                SERIES.compute(jd, ad);
+        }
+    },
+    /**
+     * Chebyshev polynomials fitted to {@link #SERIES} over 32-day segments for years 1800-2200,
+     * falling back to {@link #SERIES} outside that range. The values differ from {@link #SERIES}
+     * by less than 0.2 arc-second (about 0.013 second of time), with a smaller resource than
+     * {@link #TABLE}.
+     */
+    FITTED {
+        @Override
+        void compute(double jd, AstroDay ad) {
+            if (!EphemerisFit.getInstance().compute(jd, ad))
+                SERIES.compute(jd, ad);
+        }
+    };
+
+    /* Each source has its own values, so each has its own cache */
+    final AstroDayCache cache = new AstroDayCache();
+
+    abstract void compute(double jd, AstroDay ad);
+}
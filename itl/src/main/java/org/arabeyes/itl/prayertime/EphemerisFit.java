@@ -0,0 +1,219 @@
+/* Copyright (c) 2017, Fikrul Arif
+ * (under LGPL license - see COPYING file)
+ */
+package org.arabeyes.itl.prayertime;
+
+import org.arabeyes.itl.prayertime.AstroModule.AstroDay;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static java.lang.Math.cos;
+import static java.lang.Math.floor;
+import static org.arabeyes.itl.prayertime.AstroModule.getMeanSiderealTime;
+import static org.arabeyes.itl.prayertime.AstroModule.limitAngle;
+import static org.arabeyes.itl.prayertime.EphemerisTable.readArray;
+import static org.arabeyes.itl.prayertime.EphemerisTable.writeArray;
+
+/**
+ * Chebyshev polynomials fitted to {@link AstroModule#computeAstroDay} over 32-day segments, used
+ * by {@link Ephemeris#FITTED}. Like {@link EphemerisTable}, the nutation part of the sidereal time
+ * is fitted instead of the sidereal time itself. Only the constant term of the right ascension
+ * needs double precision, the other coefficients are stored as floats.
+ * <p>
+ * The coefficients are loaded from a resource on first use. To regenerate the resource, run
+ * {@link #main(String[])} with the output file as the argument.
+ */
+final class EphemerisFit {
+
+    private static final String RESOURCE = "ephemeris-fit.dat";
+    private static final int MAGIC = 0x49544c46; /* "ITLF" */
+    private static final int VERSION = 1;
+
+    /* 1800-01-01 until 2201-01-01 */
+    private static final double FIRST_JD = 2378496.5;
+    private static final int SEGMENTS = 4577;
+    private static final int SEGMENT_DAYS = 32;
+    private static final int DEGREE = 8;
+    private static final int RSUM_DEGREE = 4;
+
+    private final double firstJd;
+    private final int segments;
+    private final double[] ra0;  /* Constant term of right ascension in degrees */
+    private final float[] ra;    /* Other terms of right ascension */
+    private final float[] dec;   /* Declination in radians */
+    private final float[] nut;   /* Apparent minus mean sidereal time in degrees */
+    private final float[] rsum;  /* Radius vector */
+
+    private EphemerisFit(double firstJd, int segments) {
+        this.firstJd = firstJd;
+        this.segments = segments;
+        this.ra0 = new double[segments];
+        this.ra = new float[segments * DEGREE];
+        this.dec = new float[segments * (DEGREE + 1)];
+        this.nut = new float[segments * (DEGREE + 1)];
+        this.rsum = new float[segments * (RSUM_DEGREE + 1)];
+    }
+
+    static EphemerisFit getInstance() {
+        return Holder.INSTANCE;
+    }
+
+    /**
+     * @return false if the day is outside the fitted range, "ad" is not changed
+     */
+    boolean compute(double jd, AstroDay ad) {
+        double t = jd - firstJd;
+        double fs = floor(t / SEGMENT_DAYS);
+        if (!(fs >= 0 && fs < segments))
+            return false;
+        int s = (int) fs;
+        double x = 2 * (t - fs * SEGMENT_DAYS) / SEGMENT_DAYS - 1;
+
+        int off = s * (DEGREE + 1);
+        ad.ra = limitAngle(evaluate(ra0[s], ra, s * DEGREE, DEGREE, x));
+        ad.dec = evaluate(dec[off], dec, off + 1, DEGREE, x);
+        ad.sidtime = limitAngle(getMeanSiderealTime(jd)) +
+                evaluate(nut[off], nut, off + 1, DEGREE, x);
+        ad.dra = 0;
+        off = s * (RSUM_DEGREE + 1);
+        ad.rsum = evaluate(rsum[off], rsum, off + 1, RSUM_DEGREE, x);
+        return true;
+    }
+
+    /**
+     * Clenshaw's recurrence of c0 * T0(x) + c[off] * T1(x) + ... + c[off + degree - 1] *
+     * Tdegree(x)
+     */
+    private static double evaluate(double c0, float[] c, int off, int degree, double x) {
+        double b1 = 0, b2 = 0, tmp;
+        for (int j = degree; j >= 1; --j) {
+            tmp = 2 * x * b1 - b2 + c[off + j - 1];
+            b2 = b1;
+            b1 = tmp;
+        }
+        return x * b1 - b2 + c0;
+    }
+
+    private static EphemerisFit load() {
+        InputStream in = EphemerisFit.class.getResourceAsStream(RESOURCE);
+        if (in == null)
+            return new EphemerisFit(FIRST_JD, 0);
+        try {
+            DataInputStream din = new DataInputStream(new BufferedInputStream(
+                    new GZIPInputStream(in)));
+            if (din.readInt() != MAGIC || din.readInt() != VERSION)
+                throw new IOException("Unknown format of " + RESOURCE);
+            EphemerisFit fit = new EphemerisFit(din.readDouble(), din.readInt());
+            readArray(din, fit.ra0);
+            readArray(din, fit.ra);
+            readArray(din, fit.dec);
+            readArray(din, fit.nut);
+            readArray(din, fit.rsum);
+            return fit;
+        } catch (IOException e) {
+            /* Everything falls back to the series */
+            return new EphemerisFit(FIRST_JD, 0);
+        } finally {
+            try {
+                in.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    /**
+     * Chebyshev coefficients of values sampled at the n Chebyshev nodes (discrete cosine
+     * transform)
+     */
+    private static double[] fit(double[] values) {
+        int n = values.length;
+        double[] c = new double[n];
+        for (int j = 0; j < n; ++j) {
+            double sum = 0;
+            for (int k = 0; k < n; ++k)
+                sum += values[k] * cos(Math.PI * j * (k + 0.5) / n);
+            c[j] = 2.0 / n * sum;
+        }
+        c[0] /= 2;
+        return c;
+    }
+
+    /**
+     * Generates the coefficients resource.
+     *
+     * @param args output file
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 1) {
+            System.err.println("Usage: EphemerisFit <output file>");
+            System.exit(1);
+        }
+
+        final int n = DEGREE + 1;
+        EphemerisFit fit = new EphemerisFit(FIRST_JD, SEGMENTS);
+        AstroDay ad = new AstroDay();
+        double[] raValues = new double[n], decValues = new double[n];
+        double[] nutValues = new double[n], rsumValues = new double[n];
+        for (int s = 0; s < SEGMENTS; ++s) {
+            double start = FIRST_JD + s * SEGMENT_DAYS;
+            for (int k = 0; k < n; ++k) {
+                double x = cos(Math.PI * (k + 0.5) / n);
+                double jd = start + (x + 1) / 2 * SEGMENT_DAYS;
+                AstroModule.computeAstroDay(jd, ad);
+                raValues[k] = ad.ra;
+                decValues[k] = ad.dec;
+                nutValues[k] = ad.sidtime - limitAngle(getMeanSiderealTime(jd));
+                rsumValues[k] = ad.rsum;
+            }
+            /* Right ascension wraps at 360 */
+            for (int k = 1; k < n; ++k) {
+                if (raValues[k] - raValues[0] > 180)
+                    raValues[k] -= 360;
+                else if (raValues[k] - raValues[0] < -180)
+                    raValues[k] += 360;
+            }
+
+            double[] c = fit(raValues);
+            fit.ra0[s] = c[0];
+            for (int j = 1; j < n; ++j)
+                fit.ra[s * DEGREE + j - 1] = (float) c[j];
+            c = fit(decValues);
+            for (int j = 0; j < n; ++j)
+                fit.dec[s * n + j] = (float) c[j];
+            c = fit(nutValues);
+            for (int j = 0; j < n; ++j)
+                fit.nut[s * n + j] = (float) c[j];
+            c = fit(rsumValues);
+            for (int j = 0; j <= RSUM_DEGREE; ++j)
+                fit.rsum[s * (RSUM_DEGREE + 1) + j] = (float) c[j];
+        }
+
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new GZIPOutputStream(new FileOutputStream(args[0]))));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeDouble(fit.firstJd);
+            out.writeInt(fit.segments);
+            writeArray(out, fit.ra0);
+            writeArray(out, fit.ra);
+            writeArray(out, fit.dec);
+            writeArray(out, fit.nut);
+            writeArray(out, fit.rsum);
+        } finally {
+            out.close();
+        }
+    }
+
+    private static class Holder {
+        static final EphemerisFit INSTANCE = load();
+    }
+}
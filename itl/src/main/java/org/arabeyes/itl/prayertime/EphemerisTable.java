@@ -0,0 +1,184 @@
+/* Copyright (c) 2017, Fikrul Arif
+ * (under LGPL license - see COPYING file)
+ */
+package org.arabeyes.itl.prayertime;
+
+import org.arabeyes.itl.prayertime.AstroModule.AstroDay;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static java.lang.Math.floor;
+import static org.arabeyes.itl.prayertime.AstroModule.getMeanSiderealTime;
+import static org.arabeyes.itl.prayertime.AstroModule.interpolate4;
+import static org.arabeyes.itl.prayertime.AstroModule.limitAngle;
+
+/**
+ * Daily geocentric values precomputed by {@link AstroModule#computeAstroDay}, used by
+ * {@link Ephemeris#TABLE}. The values are sampled at 0h of each day and interpolated (4-point
+ * Lagrange) for the requested Julian day. Instead of the apparent sidereal time, its nutation part
+ * is stored; the mean sidereal time is computed directly since it is only a polynomial. The
+ * nutation and radius vector are small or nearly constant, so they are stored as floats.
+ * <p>
+ * The table is loaded from a resource on first use. To regenerate the resource, run
+ * {@link #main(String[])} with the output file as the argument.
+ */
+final class EphemerisTable {
+
+    private static final String RESOURCE = "ephemeris.dat";
+    private static final int MAGIC = 0x49544c45; /* "ITLE" */
+    private static final int VERSION = 1;
+
+    /* 1899-12-28 until 2201-01-04, with some days of margin for the interpolation */
+    private static final double FIRST_JD = 2415016.5;
+    private static final int DAYS = 109946;
+
+    private final double firstJd;
+    private final int days;
+    private final double[] ra;   /* Right ascension in degrees */
+    private final double[] dec;  /* Declination in radians */
+    private final float[] nut;   /* Apparent minus mean sidereal time in degrees */
+    private final float[] rsum;  /* Radius vector */
+
+    private EphemerisTable(double firstJd, int days) {
+        this.firstJd = firstJd;
+        this.days = days;
+        this.ra = new double[days];
+        this.dec = new double[days];
+        this.nut = new float[days];
+        this.rsum = new float[days];
+    }
+
+    static EphemerisTable getInstance() {
+        return Holder.INSTANCE;
+    }
+
+    /**
+     * @return false if the day is outside the table, "ad" is not changed
+     */
+    boolean compute(double jd, AstroDay ad) {
+        double t = jd - firstJd;
+        double fi = floor(t);
+        /* Needs one day before and two days after */
+        if (!(fi >= 1 && fi < days - 2))
+            return false;
+        int i = (int) fi;
+        double p = t - fi;
+
+        /* Right ascension wraps at 360 */
+        double ra1 = ra[i];
+        double r = interpolate4(p, unwrap(ra[i - 1], ra1), ra1, unwrap(ra[i + 1], ra1),
+                unwrap(ra[i + 2], ra1));
+
+        ad.ra = limitAngle(r);
+        ad.dec = interpolate4(p, dec[i - 1], dec[i], dec[i + 1], dec[i + 2]);
+        ad.sidtime = limitAngle(getMeanSiderealTime(jd)) +
+                interpolate4(p, nut[i - 1], nut[i], nut[i + 1], nut[i + 2]);
+        ad.dra = 0;
+        ad.rsum = interpolate4(p, rsum[i - 1], rsum[i], rsum[i + 1], rsum[i + 2]);
+        return true;
+    }
+
+    private static double unwrap(double a, double ref) {
+        if (a - ref > 180)
+            return a - 360;
+        if (a - ref < -180)
+            return a + 360;
+        return a;
+    }
+
+    private static EphemerisTable load() {
+        InputStream in = EphemerisTable.class.getResourceAsStream(RESOURCE);
+        if (in == null)
+            return new EphemerisTable(FIRST_JD, 0);
+        try {
+            DataInputStream din = new DataInputStream(new BufferedInputStream(
+                    new GZIPInputStream(in)));
+            if (din.readInt() != MAGIC || din.readInt() != VERSION)
+                throw new IOException("Unknown format of " + RESOURCE);
+            EphemerisTable table = new EphemerisTable(din.readDouble(), din.readInt());
+            readArray(din, table.ra);
+            readArray(din, table.dec);
+            readArray(din, table.nut);
+            readArray(din, table.rsum);
+            return table;
+        } catch (IOException e) {
+            /* Everything falls back to the series */
+            return new EphemerisTable(FIRST_JD, 0);
+        } finally {
+            try {
+                in.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    static void readArray(DataInputStream in, double[] array) throws IOException {
+        for (int i = 0; i < array.length; ++i)
+            array[i] = in.readDouble();
+    }
+
+    static void readArray(DataInputStream in, float[] array) throws IOException {
+        for (int i = 0; i < array.length; ++i)
+            array[i] = in.readFloat();
+    }
+
+    static void writeArray(DataOutputStream out, double[] array) throws IOException {
+        for (double v : array)
+            out.writeDouble(v);
+    }
+
+    static void writeArray(DataOutputStream out, float[] array) throws IOException {
+        for (float v : array)
+            out.writeFloat(v);
+    }
+
+    /**
+     * Generates the table resource.
+     *
+     * @param args output file
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 1) {
+            System.err.println("Usage: EphemerisTable <output file>");
+            System.exit(1);
+        }
+
+        EphemerisTable table = new EphemerisTable(FIRST_JD, DAYS);
+        AstroDay ad = new AstroDay();
+        for (int i = 0; i < DAYS; ++i) {
+            double jd = FIRST_JD + i;
+            AstroModule.computeAstroDay(jd, ad);
+            table.ra[i] = ad.ra;
+            table.dec[i] = ad.dec;
+            table.nut[i] = (float) (ad.sidtime - limitAngle(getMeanSiderealTime(jd)));
+            table.rsum[i] = (float) ad.rsum;
+        }
+
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new GZIPOutputStream(new FileOutputStream(args[0]))));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeDouble(table.firstJd);
+            out.writeInt(table.days);
+            writeArray(out, table.ra);
+            writeArray(out, table.dec);
+            writeArray(out, table.nut);
+            writeArray(out, table.rsum);
+        } finally {
+            out.close();
+        }
+    }
+
+    private static class Holder {
+        static final EphemerisTable INSTANCE = load();
+    }
+}
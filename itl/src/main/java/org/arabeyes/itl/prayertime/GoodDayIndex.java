@@ -0,0 +1,119 @@
+/* Copyright (c) 2017, Fikrul Arif
+ * (under LGPL license - see COPYING file)
+ */
+package org.arabeyes.itl.prayertime;
+
+import org.arabeyes.itl.prayertime.AstroModule.AstroDay;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import static java.lang.Math.floor;
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+import static org.arabeyes.itl.prayertime.AstroModule.RAD_TO_DEG;
+
+/**
+ * Index of the sun's declination by day, used to skip the days which surely are not "good"
+ * (both Fajr and Ishaa can be calculated normally) in the nearest good day search of the GOOD_*
+ * extreme methods. Whether Fajr or Ishaa is valid only depends on the declination, the latitude,
+ * and the angle: the sun reaches the angle below the horizon (and rises above it) on the day iff
+ * <pre>
+ *     |lat + dec| <= 90 - angle  and  |lat - dec| <= 90 + angle
+ * </pre>
+ * so a good day is a day with the declination in an interval depending only on the latitude and
+ * the angles. The declination of each day is interpolated from the geocentric one sampled daily,
+ * and compared to the interval with a margin covering the interpolation error (less than 0.001
+ * degree) and the topocentric correction (less than 0.003 degree). Days outside the interval by
+ * more than the margin are skipped, the remaining ones are still checked exactly.
+ * <p>
+ * The samples are computed on demand in blocks for each ephemeris and kept in a direct-mapped
+ * table shared by all threads, like {@link Nutation}.
+ */
+final class GoodDayIndex {
+
+    private static final double MARGIN = 0.01;
+
+    /* The samples are at 0h of each day */
+    private static final double EPOCH = 2451544.5;
+    private static final int BLOCK_BITS = 6;
+    private static final int BLOCK_SIZE = 1 << BLOCK_BITS;
+    /* 64 blocks of 64 days, about 11 years */
+    private static final int SLOTS_BITS = 6;
+    private static final int EPHEMERIS_COUNT = Ephemeris.values().length;
+
+    private static final AtomicReferenceArray<Block> blocks =
+            new AtomicReferenceArray<Block>(1 << SLOTS_BITS);
+
+    private GoodDayIndex() {
+    }
+
+    /**
+     * @return the smallest i >= 1 such that the day julianDay - i or julianDay + i may be a good
+     * day; the days in between surely are not
+     */
+    static int getFirstCandidate(Ephemeris eph, double julianDay, double lat, double fajrAng,
+                                 double ishaaAng, int maxDays) {
+        /* The interval of good declinations, widened by the margin */
+        double lo = max(max(fajrAng - 90 - lat, lat - 90 - fajrAng),
+                max(ishaaAng - 90 - lat, lat - 90 - ishaaAng)) - MARGIN;
+        double hi = min(min(90 - fajrAng - lat, lat + 90 + fajrAng),
+                min(90 - ishaaAng - lat, lat + 90 + ishaaAng)) + MARGIN;
+
+        int i;
+        for (i = 1; i <= maxDays; i++) {
+            double dec = getDeclination(eph, julianDay - i);
+            if (dec >= lo && dec <= hi)
+                break;
+            dec = getDeclination(eph, julianDay + i);
+            if (dec >= lo && dec <= hi)
+                break;
+        }
+        return i;
+    }
+
+    /**
+     * @return geocentric declination in degrees, linearly interpolated
+     */
+    private static double getDeclination(Ephemeris eph, double JD) {
+        double t = JD - EPOCH;
+        double fk = floor(t);
+        long k = (long) fk;
+        double p = t - fk;
+
+        Block block = getBlock(eph, k >> BLOCK_BITS);
+        int i = (int) (k & (BLOCK_SIZE - 1));
+        return block.dec[i] + p * (block.dec[i + 1] - block.dec[i]);
+    }
+
+    private static Block getBlock(Ephemeris eph, long number) {
+        int index = (int) ((number * EPHEMERIS_COUNT + eph.ordinal()) &
+                ((1 << SLOTS_BITS) - 1));
+        Block block = blocks.get(index);
+        if (block == null || block.number != number || block.eph != eph) {
+            block = new Block(eph, number);
+            blocks.set(index, block);
+        }
+        return block;
+    }
+
+    /**
+     * Samples of the days of the block and one day after, so that any point in the block can be
+     * interpolated without the next block
+     */
+    private static final class Block {
+        final Ephemeris eph;
+        final long number;
+        final double[] dec = new double[BLOCK_SIZE + 1];
+
+        Block(Ephemeris eph, long number) {
+            this.eph = eph;
+            this.number = number;
+            AstroDay ad = new AstroDay();
+            long first = number << BLOCK_BITS;
+            for (int i = 0; i < dec.length; i++) {
+                eph.compute(EPOCH + first + i, ad);
+                dec[i] = RAD_TO_DEG(ad.dec);
+            }
+        }
+    }
+}
@@ -109,6 +109,15 @@ public class Method {
      */
     double[] offList = new double[6];
 
+    /**
+     * Source of the sun's position (default is
+     * {@link Ephemeris#SERIES})
+     */
+    Ephemeris ephemeris = Ephemeris.SERIES;
+
+    /* Last result of compile(). Racy but harmless, since it is immutable. */
+    private PrayerModule.CompiledMethod compiled;
+
     Method() {
     }
 
@@ -127,7 +136,20 @@ public class Method {
         this.extreme = src.extreme;
         this.extremeLat = src.extremeLat;
         this.offset = src.offset;
-        this.offList = src.offList;
+        this.offList = src.offList.clone();
+        this.ephemeris = src.ephemeris;
+    }
+
+    /**
+     * @return immutable form of the current values, only created again if they have changed
+     */
+    PrayerModule.CompiledMethod compile() {
+        PrayerModule.CompiledMethod result = compiled;
+        if (result == null || !result.isOf(this)) {
+            result = new PrayerModule.CompiledMethod(this);
+            compiled = result;
+        }
+        return result;
     }
 
     /**
@@ -254,4 +276,13 @@ public class Method {
         this.offList = offList;
         return this;
     }
+
+    public Ephemeris getEphemeris() {
+        return ephemeris;
+    }
+
+    public Method setEphemeris(Ephemeris ephemeris) {
+        this.ephemeris = ephemeris;
+        return this;
+    }
 }
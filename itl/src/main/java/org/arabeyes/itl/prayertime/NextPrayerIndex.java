@@ -0,0 +1,123 @@
+/* Copyright (c) 2017, Fikrul Arif
+ * (under LGPL license - see COPYING file)
+ */
+package org.arabeyes.itl.prayertime;
+
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * Answers "what is the next prayer after this instant" for a location. The times around the
+ * local date of the last query are kept as a sorted bundle of epoch seconds, so the queries of
+ * the same day only take a binary search over a few times, without calculation or allocation.
+ * The times after the midnight (e.g. Ishaa at extreme latitudes) and the next day's times are
+ * included, so the answer doesn't depend on where the day boundary is.
+ * <p>
+ * Instances are thread-safe, see {@link PrayerCalculator}.
+ */
+@SuppressWarnings("WeakerAccess")
+public final class NextPrayerIndex {
+
+    private final PrayerCalculator calculator;
+    private final double gmtDiff;
+    private final long zoneOffset; /* Seconds */
+    private final int mask;
+    /* Bundle of the last query. Racy but harmless, since it is immutable. */
+    private Bundle bundle;
+
+    /**
+     * Same as {@link #NextPrayerIndex(PrayerCalculator, double, Set)} with Fajr, Shurooq, Zuhr,
+     * Assr, Maghrib, and Ishaa
+     */
+    public NextPrayerIndex(PrayerCalculator calculator, double gmtDiff) {
+        this(calculator, gmtDiff, EnumSet.range(TimeType.FAJR, TimeType.ISHAA));
+    }
+
+    /**
+     * @param calculator calculator of the location
+     * @param gmtDiff    GMT difference at regular time in hours, which determines the local dates
+     *                   of the times
+     * @param types      times to look up, only Fajr until Ishaa are considered
+     */
+    public NextPrayerIndex(PrayerCalculator calculator, double gmtDiff, Set<TimeType> types) {
+        this.calculator = calculator;
+        this.gmtDiff = gmtDiff;
+        this.zoneOffset = Math.round(gmtDiff * 3600);
+        this.mask = PrayerModule.getTimeMask(types);
+    }
+
+    /**
+     * @param epochSecond seconds since 1970-01-01T00:00:00Z
+     * @return the first time strictly after the instant, or null if none of the types can be
+     * calculated until the end of the next local day (extreme latitudes without
+     * {@link ExtremeMethod})
+     */
+    public PrayerEvent getNext(long epochSecond) {
+        Bundle b = bundle;
+        if (b == null || epochSecond < b.start || epochSecond >= b.end) {
+            long local = epochSecond + zoneOffset;
+            long epochDay = local >= 0 ? local / 86400 : (local + 1) / 86400 - 1;
+            b = new Bundle(epochDay);
+            bundle = b;
+        }
+        return b.getNext(epochSecond);
+    }
+
+    /**
+     * @return seconds from the instant until the next time, or -1 if there is none
+     * @see #getNext(long)
+     */
+    public long getSecondsUntilNext(long epochSecond) {
+        PrayerEvent next = getNext(epochSecond);
+        return next != null ? next.getEpochSecond() - epochSecond : -1;
+    }
+
+    /**
+     * Times which may be the next one of any instant of a local day: the ones after the day
+     * starts among the times of the previous day, the day, and the next day, sorted
+     */
+    private final class Bundle {
+        final long start; /* Midnight starting the day */
+        final long end;   /* Midnight ending the day */
+        final long[] times;
+        final PrayerEvent[] events;
+
+        Bundle(long epochDay) {
+            this.start = epochDay * 86400 - zoneOffset;
+            this.end = start + 86400;
+
+            TimeType[] types = TimeType.values();
+            long[] all = new long[18];
+            PrayerEvent[] found = new PrayerEvent[18];
+            int n = 0;
+            for (int d = 0; d < 3; ++d) {
+                int extreme = calculator.getEpochSeconds(epochDay - 1 + d, gmtDiff, all, d * 6);
+                for (int i = 0; i < 6; ++i) {
+                    long t = all[d * 6 + i];
+                    if ((mask & 1 << i) == 0 || t == PrayerTime.INVALID_EPOCH_SECOND || t <= start)
+                        continue;
+                    n = PrayerEvent.insertSorted(found, n,
+                            new PrayerEvent(t, types[i], (extreme & 1 << i) != 0));
+                }
+            }
+
+            this.times = new long[n];
+            this.events = new PrayerEvent[n];
+            for (int i = 0; i < n; ++i) {
+                times[i] = found[i].getEpochSecond();
+                events[i] = found[i];
+            }
+        }
+
+        PrayerEvent getNext(long epochSecond) {
+            int lo = 0, hi = times.length;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (times[mid] <= epochSecond)
+                    lo = mid + 1;
+                else hi = mid;
+            }
+            return lo < events.length ? events[lo] : null;
+        }
+    }
+}
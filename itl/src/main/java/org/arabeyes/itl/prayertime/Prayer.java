@@ -3,6 +3,9 @@
  */
 package org.arabeyes.itl.prayertime;
 
+import org.arabeyes.itl.prayertime.AstroModule.Astro;
+import org.arabeyes.itl.prayertime.PrayerModule.CompiledLocation;
+import org.arabeyes.itl.prayertime.PrayerModule.CompiledMethod;
 import org.arabeyes.itl.prayertime.PrayerModule.Location;
 import org.arabeyes.itl.prayertime.PrayerModule.SDate;
 
@@ -10,15 +13,26 @@ import java.util.Calendar;
 import java.util.Date;
 import java.util.GregorianCalendar;
 import java.util.LinkedHashMap;
+import java.util.Set;
 import java.util.TimeZone;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 public class Prayer {
 
-    private static final Method[] METHODS_CACHE = new Method[StandardMethod.values().length];
+    /**
+     * Number of times of {@link #getFullDayArray()}
+     */
+    public static final int FULL_DAY_TIMES = 9;
+
+    private static final AtomicReferenceArray<Method> METHODS_CACHE =
+            new AtomicReferenceArray<Method>(StandardMethod.values().length);
 
     private final Location location;
+    private CompiledLocation compiledLocation; /* Of "location", null if it has changed */
     private Method method;
     private SDate date;
+    private TimeZone zone;   /* Of the date set */
+    private int millisOfDay; /* Local time of day of the date set */
 
     public Prayer() {
         this.location = new Location();
@@ -41,10 +55,10 @@ public class Prayer {
      * @return self, for chaining
      */
     public Prayer setMethod(StandardMethod method) {
-        Method m = METHODS_CACHE[method.ordinal()];
+        Method m = METHODS_CACHE.get(method.ordinal());
         if (m == null) {
             m = Method.fromStandard(method);
-            METHODS_CACHE[method.ordinal()] = m;
+            METHODS_CACHE.set(method.ordinal(), m);
         }
         return setMethod(m);
     }
@@ -59,6 +73,7 @@ public class Prayer {
         this.location.degreeLat = lat;
         this.location.degreeLong = lon;
         this.location.seaLevel = seaLevel;
+        this.compiledLocation = null;
 
         return this;
     }
@@ -69,6 +84,7 @@ public class Prayer {
      */
     public Prayer setPressure(double pressure) {
         this.location.pressure = pressure;
+        this.compiledLocation = null;
 
         return this;
     }
@@ -79,6 +95,7 @@ public class Prayer {
      */
     public Prayer setTemperature(double temperature) {
         this.location.temperature = temperature;
+        this.compiledLocation = null;
 
         return this;
     }
@@ -90,7 +107,12 @@ public class Prayer {
         this.date.month = calendar.get(Calendar.MONTH) + 1;
         this.date.year = calendar.get(Calendar.YEAR);
         this.location.gmtDiff = calendar.get(Calendar.ZONE_OFFSET) / (1000d * 60 * 60);
-        this.location.dst = Math.round(calendar.get(Calendar.DST_OFFSET) / (1000f * 60 * 60));
+        this.location.dst = calendar.get(Calendar.DST_OFFSET) / (1000d * 60 * 60);
+        this.zone = (TimeZone) calendar.getTimeZone().clone();
+        this.millisOfDay = calendar.get(Calendar.MILLISECOND) +
+                1000 * (calendar.get(Calendar.SECOND) +
+                        60 * (calendar.get(Calendar.MINUTE) +
+                                60 * calendar.get(Calendar.HOUR_OF_DAY)));
 
         return this;
     }
@@ -101,6 +123,42 @@ public class Prayer {
         return setDate(calendar);
     }
 
+    /**
+     * Set the date with the GMT difference and daylight saving time of the time zone at noon of
+     * the date, the same as {@link #setDate(GregorianCalendar)} with a calendar at noon of the date
+     * but without creating one, the offsets are taken from a table of the year shared by all
+     * instances (see {@link #getPrayerTimeArrays(int)}).
+     *
+     * @param month 1-12
+     * @return self, for chaining
+     * @throws IllegalArgumentException if the month or the day is not valid
+     */
+    public Prayer setDate(int year, int month, int day, TimeZone timeZone) {
+        int epochDay = Timetable.toEpochDay(year, month, day);
+        SDate date = new SDate();
+        Timetable.fromEpochDay(epochDay, date);
+        if (date.year != year || date.month != month || date.day != day)
+            throw new IllegalArgumentException(String.format("year=%s, month=%s, day=%s",
+                    year, month, day));
+        ZoneOffsets offsets = ZoneOffsets.get(timeZone, year, ZoneOffsets.NOON);
+        int i = epochDay - offsets.startEpochDay;
+        this.date = date;
+        this.location.gmtDiff = offsets.gmtDiff[i];
+        this.location.dst = offsets.dst[i];
+        this.zone = offsets.zone;
+        this.millisOfDay = ZoneOffsets.NOON;
+
+        return this;
+    }
+
+    private CompiledLocation getCompiledLocation() {
+        if (compiledLocation == null)
+            compiledLocation = new CompiledLocation(location);
+        else
+            compiledLocation = compiledLocation.withZone(location.gmtDiff, location.dst);
+        return compiledLocation;
+    }
+
     private void checkConfig() {
         if (method == null || date == null || Double.isNaN(location.degreeLat))
             throw new IllegalStateException("Method, location, or date is not set");
@@ -114,7 +172,203 @@ public class Prayer {
     @SuppressWarnings("WeakerAccess")
     public PrayerTime[] getPrayerTimeArray() {
         checkConfig();
-        return PrayerModule.getPrayerTimes(location, method, date);
+        return PrayerModule.getPrayerTimes(getCompiledLocation(), method.compile(), date);
+    }
+
+    /**
+     * Same as {@link #getPrayerTimeArray()}, but the times are stored as seconds of day (see
+     * {@link PrayerTime#getSecondOfDay()}) into times[offset] until times[offset + 5]. The work
+     * areas are kept for each thread and the sun's values of the days are cached, so repeated
+     * calls don't allocate anything as long as the days they need (including the ones searched by
+     * the extreme latitude methods) are still cached. The values of the other days are computed
+     * and cached, which allocates.
+     *
+     * @param times  output, time of Fajr, Shurooq, Zuhr, Assr, Maghrib, Ishaa respectively
+     * @param offset index of Fajr in "times"
+     * @return extreme status, bit i is set if the i-th time is calculated through extreme latitude
+     * methods (see {@link PrayerTime#isExtreme()})
+     */
+    public int getPrayerTimeSeconds(int[] times, int offset) {
+        checkConfig();
+        PrayerModule.Scratch work = PrayerModule.getScratch();
+        return PrayerModule.getPrayerTimes(getCompiledLocation(), method.compile(), date,
+                work.astroCache, work, times, offset);
+    }
+
+    /**
+     * Same as {@link #getPrayerTimeSeconds(int[], int)}, but only the times of "types" are
+     * calculated and stored, the other elements of "times" are not modified. The sun's values
+     * which none of them depend on are skipped, e.g. only Maghrib needs no Fajr, Assr, or Ishaa
+     * angle, and the extreme latitude method is skipped when it cannot change them. The results
+     * are the same as calculating all times.
+     *
+     * @param types times to calculate, only Fajr until Ishaa are considered
+     * @return extreme status of the calculated times
+     */
+    public int getPrayerTimeSeconds(Set<TimeType> types, int[] times, int offset) {
+        checkConfig();
+        PrayerModule.Scratch work = PrayerModule.getScratch();
+        return PrayerModule.getPrayerTimes(getCompiledLocation(), method.compile(), date,
+                work.astroCache, work, PrayerModule.getTimeMask(types), times, offset);
+    }
+
+    /**
+     * Same as {@link #getPrayerTimeSeconds(int[], int)}, but the times are stored as seconds since
+     * 1970-01-01T00:00:00Z (e.g. {@code Instant.ofEpochSecond()}), or
+     * {@link PrayerTime#INVALID_EPOCH_SECOND}. They are calculated directly from the date and the
+     * GMT difference, so no daylight saving time or calendar is involved, and a time after the
+     * midnight (or before it because of an offset) keeps its date.
+     *
+     * @param seconds output, time of Fajr, Shurooq, Zuhr, Assr, Maghrib, Ishaa respectively
+     * @param offset  index of Fajr in "seconds"
+     * @return extreme status, see {@link #getPrayerTimeSeconds(int[], int)}
+     */
+    public int getEpochSeconds(long[] seconds, int offset) {
+        checkConfig();
+        PrayerModule.Scratch work = PrayerModule.getScratch();
+        return PrayerModule.getEpochSeconds(getCompiledLocation(), method.compile(), date,
+                work.astroCache, work, seconds, offset);
+    }
+
+    /**
+     * Same as {@link #getEpochSeconds(long[], int)}, but the times are exact (with fraction of
+     * second) as calculated, before the offsets and rounding, or NaN if invalid.
+     */
+    public int getRawEpochSeconds(double[] seconds, int offset) {
+        checkConfig();
+        PrayerModule.Scratch work = PrayerModule.getScratch();
+        return PrayerModule.getRawEpochSeconds(getCompiledLocation(), method.compile(), date,
+                work.astroCache, work, seconds, offset);
+    }
+
+    /**
+     * Calculate prayer times, Shurooq (sunrise), Imsaak, next day's Fajr, and next day's Imsaak at
+     * once. The results are the same as calling {@link #getPrayerTimeArray()},
+     * {@link #getImsaak()}, {@link #getNextDayFajr()}, and {@link #getNextDayImsaak()}, but the
+     * astronomical values are shared between today and tomorrow and each extra angle is evaluated
+     * once, so this is much cheaper than those calls.
+     *
+     * @return time of Fajr, Shurooq, Zuhr, Assr, Maghrib, Ishaa, Imsaak, next day's Fajr, and
+     * next day's Imsaak respectively
+     */
+    public PrayerTime[] getFullDayArray() {
+        int[] times = new int[FULL_DAY_TIMES];
+        int extreme = getFullDaySeconds(times, 0);
+        PrayerTime[] result = new PrayerTime[FULL_DAY_TIMES];
+        for (int i = 0; i < FULL_DAY_TIMES; ++i)
+            result[i] = new PrayerTime(times[i], (extreme & (1 << i)) != 0);
+        return result;
+    }
+
+    /**
+     * Same as {@link #getFullDayArray()}, but the times are stored as seconds of day into
+     * times[offset] until times[offset + 8], like {@link #getPrayerTimeSeconds(int[], int)}.
+     *
+     * @return extreme status, bit i is set if times[offset + i] is calculated through extreme
+     * latitude methods
+     */
+    public int getFullDaySeconds(int[] times, int offset) {
+        checkConfig();
+        PrayerModule.Scratch work = PrayerModule.getScratch();
+        return PrayerModule.getDayBundle(getCompiledLocation(), method.compile(), date,
+                work.astroCache, work, times, offset);
+    }
+
+    /**
+     * Calculate prayer times and Shurooq (sunrise) of consecutive days, starting from the date
+     * set. Astronomical values are shared between the days, so this is much cheaper than setting
+     * the date and calling {@link #getPrayerTimeArray()} for each day. Daylight saving time is
+     * followed for each day based on the time zone of the date set, at the same local time of
+     * day. The offsets of each year are computed once by a calendar and shared, so no calendar is
+     * used for each call.
+     *
+     * @param days number of days to calculate
+     * @return for each day, time of Fajr, Shurooq, Zuhr, Assr, Maghrib, Ishaa respectively
+     */
+    public PrayerTime[][] getPrayerTimeArrays(int days) {
+        checkConfig();
+        if (days < 0)
+            throw new IllegalArgumentException("Negative days: " + days);
+
+        int[] times = new int[days * 6];
+        int[] extremes = new int[days];
+        calculateDays(times, extremes);
+        PrayerTime[][] result = new PrayerTime[days][6];
+        for (int i = 0; i < days; ++i) {
+            for (int j = 0; j < 6; ++j)
+                result[i][j] = new PrayerTime(times[i * 6 + j], (extremes[i] & (1 << j)) != 0);
+        }
+        return result;
+    }
+
+    /**
+     * Same as {@link #getPrayerTimeArrays(int)}, but the result is stored compactly.
+     *
+     * @param days number of days to calculate
+     */
+    public Timetable getTimetable(int days) {
+        checkConfig();
+        if (days < 0)
+            throw new IllegalArgumentException("Negative days: " + days);
+
+        int[] times = new int[days * 6];
+        int[] extremes = new int[days];
+        calculateDays(times, extremes);
+        return new Timetable(date.year, date.month, date.day, times, extremes);
+    }
+
+    /**
+     * Same as {@link #getTimetable(int)}, but the times are kept before the offsets, rounding, and
+     * daylight saving time, see {@link RawTimetable#toTimetable(Method)}.
+     *
+     * @param days number of days to calculate
+     */
+    public RawTimetable getRawTimetable(int days) {
+        checkConfig();
+        if (days < 0)
+            throw new IllegalArgumentException("Negative days: " + days);
+
+        double[] hours = new double[days * 6];
+        int[] extremes = new int[days];
+        double[] dst = new double[days];
+        calculateDays(null, hours, dst, extremes);
+        return new RawTimetable(date.year, date.month, date.day, hours, extremes, dst);
+    }
+
+    private void calculateDays(int[] times, int[] extremes) {
+        calculateDays(times, null, null, extremes);
+    }
+
+    /**
+     * Fills the seconds of day (or the raw hours and daylight saving time if "times" is null) and
+     * extreme status of consecutive days, starting from the date set
+     */
+    private void calculateDays(int[] times, double[] hours, double[] dst, int[] extremes) {
+        int startEpochDay = Timetable.toEpochDay(date.year, date.month, date.day);
+        ZoneOffsets offsets = null;
+        CompiledLocation compiled = getCompiledLocation();
+        CompiledMethod conf = method.compile();
+        SDate d = new SDate();
+        Astro astroCache = new Astro();
+        PrayerModule.Scratch work = PrayerModule.getScratch();
+        for (int i = 0; i < extremes.length; ++i) {
+            Timetable.fromEpochDay(startEpochDay + i, d);
+            /* The first day is the one set, the others follow the time zone */
+            if (i > 0) {
+                if (offsets == null || offsets.year != d.year)
+                    offsets = ZoneOffsets.get(zone, d.year, millisOfDay);
+                int k = startEpochDay + i - offsets.startEpochDay;
+                compiled = compiled.withZone(offsets.gmtDiff[k], offsets.dst[k]);
+            }
+            if (times != null) {
+                extremes[i] = PrayerModule.getPrayerTimes(compiled, conf, d, astroCache, work,
+                        times, i * 6);
+            } else {
+                extremes[i] = PrayerModule.getRawPrayerTimes(compiled, conf, d, astroCache, work,
+                        hours, i * 6);
+                dst[i] = compiled.dst;
+            }
+        }
     }
 
     /**
@@ -133,17 +387,17 @@ public class Prayer {
 
     public PrayerTime getImsaak() {
         checkConfig();
-        return PrayerModule.getImsaak(location, method, date);
+        return PrayerModule.getImsaak(getCompiledLocation(), method.compile(), date);
     }
 
     public PrayerTime getNextDayFajr() {
         checkConfig();
-        return PrayerModule.getNextDayFajr(location, method, date);
+        return PrayerModule.getNextDayFajr(getCompiledLocation(), method.compile(), date);
     }
 
     public PrayerTime getNextDayImsaak() {
         checkConfig();
-        return PrayerModule.getNextDayImsaak(location, method, date);
+        return PrayerModule.getNextDayImsaak(getCompiledLocation(), method.compile(), date);
     }
 
     /**
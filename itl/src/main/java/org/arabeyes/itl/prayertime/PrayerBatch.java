@@ -0,0 +1,96 @@
+/* Copyright (c) 2017, Fikrul Arif
+ * (under LGPL license - see COPYING file)
+ */
+package org.arabeyes.itl.prayertime;
+
+import org.arabeyes.itl.prayertime.PrayerModule.CompiledLocation;
+import org.arabeyes.itl.prayertime.PrayerModule.CompiledMethod;
+import org.arabeyes.itl.prayertime.PrayerModule.Location;
+import org.arabeyes.itl.prayertime.PrayerModule.SDate;
+
+import java.util.Set;
+
+/**
+ * Calculate prayer times of many locations on the same date. The locations are given as
+ * parallel arrays and the results are stored in arrays of primitives, so no object is created
+ * for each location. The geocentric values of the sun are shared by all locations with the same
+ * GMT difference, and only the values depending on the location are calculated for each one.
+ * The results are the same as {@link Prayer#getPrayerTimeArray()} with the same settings.
+ */
+public final class PrayerBatch {
+
+    private PrayerBatch() {
+    }
+
+    /**
+     * @param method   calculation method of all locations
+     * @param year     year of the date
+     * @param month    month of the date (1-12)
+     * @param day      day of month of the date
+     * @param lat      latitude of each location in decimal degrees
+     * @param lon      longitude of each location in decimal degrees
+     * @param seaLevel height above sea level of each location in meters
+     * @param gmtDiff  GMT difference of each location at regular time in hours
+     * @param dst      daylight saving time of each location in hours, or null if not used
+     * @param times    output, times[i * 6 + t] is the time of type t (Fajr, Shurooq, Zuhr, Assr,
+     *                 Maghrib, Ishaa respectively) of location i as second of day (see
+     *                 {@link PrayerTime#getSecondOfDay()})
+     * @param extremes output, bit t of extremes[i] is set if the time of type t of location i is
+     *                 calculated through extreme latitude methods (see
+     *                 {@link PrayerTime#isExtreme()})
+     * @throws IllegalArgumentException if the lengths of the arrays don't match
+     */
+    public static void getPrayerTimes(Method method, int year, int month, int day,
+                                      double[] lat, double[] lon, double[] seaLevel,
+                                      double[] gmtDiff, double[] dst, int[] times, int[] extremes) {
+        getPrayerTimes(method, year, month, day, lat, lon, seaLevel, gmtDiff, dst,
+                PrayerModule.ALL_TIMES, times, extremes);
+    }
+
+    /**
+     * Same as {@link #getPrayerTimes(Method, int, int, int, double[], double[], double[],
+     * double[], double[], int[], int[])}, but only the times of "types" are calculated and stored,
+     * see {@link Prayer#getPrayerTimeSeconds(Set, int[], int)}. This is cheaper for the jobs
+     * needing only some of the times, e.g. Maghrib of many locations.
+     *
+     * @param types times to calculate, only Fajr until Ishaa are considered
+     */
+    public static void getPrayerTimes(Method method, int year, int month, int day,
+                                      double[] lat, double[] lon, double[] seaLevel,
+                                      double[] gmtDiff, double[] dst, Set<TimeType> types,
+                                      int[] times, int[] extremes) {
+        getPrayerTimes(method, year, month, day, lat, lon, seaLevel, gmtDiff, dst,
+                PrayerModule.getTimeMask(types), times, extremes);
+    }
+
+    private static void getPrayerTimes(Method method, int year, int month, int day,
+                                       double[] lat, double[] lon, double[] seaLevel,
+                                       double[] gmtDiff, double[] dst, int mask, int[] times,
+                                       int[] extremes) {
+        int n = lat.length;
+        if (lon.length != n || seaLevel.length != n || gmtDiff.length != n ||
+                (dst != null && dst.length != n) || extremes.length != n || times.length != n * 6)
+            throw new IllegalArgumentException("Array lengths don't match");
+
+        SDate date = new SDate();
+        date.year = year;
+        date.month = month;
+        date.day = day;
+
+        CompiledMethod conf = method.compile();
+        Location loc = new Location();
+        PrayerModule.Scratch work = PrayerModule.getScratch();
+        CompiledLocation compiled = work.location;
+        for (int i = 0; i < n; ++i) {
+            loc.degreeLat = lat[i];
+            loc.degreeLong = lon[i];
+            loc.seaLevel = seaLevel[i];
+            loc.gmtDiff = gmtDiff[i];
+            loc.dst = dst != null ? dst[i] : 0;
+            compiled.set(loc);
+            /* The geocentric values are only recomputed when the Julian day changes */
+            extremes[i] = PrayerModule.getPrayerTimes(compiled, conf, date,
+                    work.astroCache, work, mask, times, i * 6);
+        }
+    }
+}
@@ -0,0 +1,264 @@
+/* Copyright (c) 2017, Fikrul Arif
+ * (under LGPL license - see COPYING file)
+ */
+package org.arabeyes.itl.prayertime;
+
+import org.arabeyes.itl.prayertime.PrayerModule.CompiledLocation;
+import org.arabeyes.itl.prayertime.PrayerModule.CompiledMethod;
+import org.arabeyes.itl.prayertime.PrayerModule.Location;
+import org.arabeyes.itl.prayertime.PrayerModule.SDate;
+import org.arabeyes.itl.prayertime.PrayerModule.Scratch;
+
+import java.util.Set;
+import java.util.TimeZone;
+
+/**
+ * Immutable calculator of prayer times of a location with a method. Unlike {@link Prayer}, the
+ * date and the time zone are given to each call instead of being set, so an instance can be
+ * created once and used by any number of threads at the same time. The results are the same as
+ * {@link Prayer} with the same settings.
+ * <p>
+ * The date is given either as year, month, and day, or as the number of days since 1970-01-01
+ * (e.g. {@code LocalDate.toEpochDay()}). The time zone is given as the GMT difference at regular
+ * time and the daylight saving time in hours, as in {@link Prayer#setDate(java.util.Date,
+ * java.util.TimeZone)}.
+ */
+@SuppressWarnings("WeakerAccess")
+public final class PrayerCalculator {
+
+    /* Supported range of days since 1970-01-01 */
+    private static final long MIN_EPOCH_DAY = Integer.MIN_VALUE / 2;
+    private static final long MAX_EPOCH_DAY = Integer.MAX_VALUE / 2;
+
+    private final CompiledLocation location;
+    private final CompiledMethod method;
+    /* Last location with the time zone of a call. Volatile so that the fields of the location,
+     * which aren't final, are seen by other threads. */
+    private volatile CompiledLocation zoned;
+
+    /**
+     * @param lat      latitude in decimal degrees
+     * @param lon      longitude in decimal degrees
+     * @param seaLevel height (altitude/elevation) above sea level in meters
+     * @param method   calculation method, later changes of it don't affect this object
+     */
+    public PrayerCalculator(double lat, double lon, double seaLevel, Method method) {
+        this(lat, lon, seaLevel, 0, 0, method);
+    }
+
+    /**
+     * @param pressure    atmospheric pressure in millibars, see {@link Prayer#setPressure(double)}
+     * @param temperature temperature in celsius degree, see {@link Prayer#setTemperature(double)}
+     * @see #PrayerCalculator(double, double, double, Method)
+     */
+    public PrayerCalculator(double lat, double lon, double seaLevel, double pressure,
+                            double temperature, Method method) {
+        Location loc = new Location();
+        loc.degreeLat = lat;
+        loc.degreeLong = lon;
+        loc.seaLevel = seaLevel;
+        loc.pressure = pressure;
+        loc.temperature = temperature;
+        this.location = new CompiledLocation(loc);
+        this.method = method.compile();
+        this.zoned = location;
+    }
+
+    /**
+     * @see #PrayerCalculator(double, double, double, Method)
+     */
+    public PrayerCalculator(double lat, double lon, double seaLevel, StandardMethod method) {
+        this(lat, lon, seaLevel, Method.fromStandard(method));
+    }
+
+    /**
+     * Calculate prayer times and Shurooq (sunrise) of the date, see
+     * {@link Prayer#getPrayerTimeSeconds(int[], int)}.
+     *
+     * @param epochDay days since 1970-01-01
+     * @param gmtDiff  GMT difference at regular time in hours
+     * @param dst      daylight saving time in hours (0 if not used)
+     * @return extreme status, bit i is set if times[offset + i] is calculated through extreme
+     * latitude methods
+     */
+    public int getPrayerTimeSeconds(long epochDay, double gmtDiff, double dst, int[] times,
+                                    int offset) {
+        Scratch work = PrayerModule.getScratch();
+        return PrayerModule.getPrayerTimes(getLocation(gmtDiff, dst), method,
+                toDate(epochDay, work.date), work.astroCache, work, times, offset);
+    }
+
+    /**
+     * Same as {@link #getPrayerTimeSeconds(long, double, double, int[], int)}, but with the GMT
+     * difference and daylight saving time of the time zone at noon of the date, see
+     * {@link Prayer#setDate(int, int, int, TimeZone)}. The offsets of each year are computed once
+     * and shared, so no calendar is used for each call.
+     */
+    public int getPrayerTimeSeconds(long epochDay, TimeZone zone, int[] times, int offset) {
+        Scratch work = PrayerModule.getScratch();
+        SDate date = toDate(epochDay, work.date);
+        ZoneOffsets offsets = ZoneOffsets.get(zone, date.year, ZoneOffsets.NOON);
+        int i = (int) epochDay - offsets.startEpochDay;
+        return PrayerModule.getPrayerTimes(getLocation(offsets.gmtDiff[i], offsets.dst[i]),
+                method, date, work.astroCache, work, times, offset);
+    }
+
+    /**
+     * @return time of Fajr, Shurooq, Zuhr, Assr, Maghrib, Ishaa respectively
+     * @see #getPrayerTimeSeconds(long, TimeZone, int[], int)
+     */
+    public PrayerTime[] getPrayerTimes(long epochDay, TimeZone zone) {
+        int[] times = new int[6];
+        return toPrayerTimes(times, getPrayerTimeSeconds(epochDay, zone, times, 0));
+    }
+
+    /**
+     * Same as {@link #getPrayerTimeSeconds(long, double, double, int[], int)}, but only the times
+     * of "types" are calculated and stored, see
+     * {@link Prayer#getPrayerTimeSeconds(Set, int[], int)}.
+     *
+     * @param types times to calculate, only Fajr until Ishaa are considered
+     * @return extreme status of the calculated times
+     */
+    public int getPrayerTimeSeconds(long epochDay, double gmtDiff, double dst, Set<TimeType> types,
+                                    int[] times, int offset) {
+        Scratch work = PrayerModule.getScratch();
+        return PrayerModule.getPrayerTimes(getLocation(gmtDiff, dst), method,
+                toDate(epochDay, work.date), work.astroCache, work,
+                PrayerModule.getTimeMask(types), times, offset);
+    }
+
+    /**
+     * Calculate prayer times and Shurooq (sunrise) of the date as seconds since
+     * 1970-01-01T00:00:00Z, see {@link Prayer#getEpochSeconds(long[], int)}. The daylight saving
+     * time is not needed.
+     *
+     * @param gmtDiff GMT difference at regular time in hours, to determine the local date
+     * @see #getPrayerTimeSeconds(long, double, double, int[], int)
+     */
+    public int getEpochSeconds(long epochDay, double gmtDiff, long[] seconds, int offset) {
+        Scratch work = PrayerModule.getScratch();
+        return PrayerModule.getEpochSeconds(getLocation(gmtDiff), method,
+                toDate(epochDay, work.date), work.astroCache, work, seconds, offset);
+    }
+
+    /**
+     * Same as {@link #getEpochSeconds(long, double, long[], int)}, but the times are exact, see
+     * {@link Prayer#getRawEpochSeconds(double[], int)}.
+     */
+    public int getRawEpochSeconds(long epochDay, double gmtDiff, double[] seconds, int offset) {
+        Scratch work = PrayerModule.getScratch();
+        return PrayerModule.getRawEpochSeconds(getLocation(gmtDiff), method,
+                toDate(epochDay, work.date), work.astroCache, work, seconds, offset);
+    }
+
+    /**
+     * Lazily calculated events of Fajr, Shurooq, Zuhr, Assr, Maghrib, and Ishaa of a range of
+     * dates, see {@link PrayerEventRange}.
+     *
+     * @param startEpochDay first date as days since 1970-01-01
+     * @param endEpochDay   the date after the last one, may be {@link Long#MAX_VALUE} for an
+     *                      open-ended range (up to the last supported date)
+     * @param gmtDiff       GMT difference at regular time in hours, to determine the local dates
+     * @param types         times to include, only Fajr until Ishaa are considered
+     */
+    public PrayerEventRange getEvents(long startEpochDay, long endEpochDay, double gmtDiff,
+                                      Set<TimeType> types) {
+        if (startEpochDay < MIN_EPOCH_DAY || startEpochDay > MAX_EPOCH_DAY)
+            throw new IllegalArgumentException("Epoch day out of range: " + startEpochDay);
+        return new PrayerEventRange(getLocation(gmtDiff), method, startEpochDay,
+                Math.max(startEpochDay, Math.min(endEpochDay, MAX_EPOCH_DAY + 1)),
+                PrayerModule.getTimeMask(types));
+    }
+
+    /**
+     * @param month 1-12
+     * @see #getPrayerTimeSeconds(long, double, double, int[], int)
+     */
+    public int getPrayerTimeSeconds(int year, int month, int day, double gmtDiff, double dst,
+                                    int[] times, int offset) {
+        Scratch work = PrayerModule.getScratch();
+        return PrayerModule.getPrayerTimes(getLocation(gmtDiff, dst), method,
+                toDate(year, month, day, work.date), work.astroCache, work, times, offset);
+    }
+
+    /**
+     * @return time of Fajr, Shurooq, Zuhr, Assr, Maghrib, Ishaa respectively
+     * @see #getPrayerTimeSeconds(long, double, double, int[], int)
+     */
+    public PrayerTime[] getPrayerTimes(long epochDay, double gmtDiff, double dst) {
+        int[] times = new int[6];
+        return toPrayerTimes(times, getPrayerTimeSeconds(epochDay, gmtDiff, dst, times, 0));
+    }
+
+    /**
+     * @param month 1-12
+     * @see #getPrayerTimes(long, double, double)
+     */
+    public PrayerTime[] getPrayerTimes(int year, int month, int day, double gmtDiff, double dst) {
+        int[] times = new int[6];
+        return toPrayerTimes(times,
+                getPrayerTimeSeconds(year, month, day, gmtDiff, dst, times, 0));
+    }
+
+    /**
+     * Calculate prayer times, Shurooq, Imsaak, next day's Fajr, and next day's Imsaak of the
+     * date, see {@link Prayer#getFullDaySeconds(int[], int)}.
+     *
+     * @see #getPrayerTimeSeconds(long, double, double, int[], int)
+     */
+    public int getFullDaySeconds(long epochDay, double gmtDiff, double dst, int[] times,
+                                 int offset) {
+        Scratch work = PrayerModule.getScratch();
+        return PrayerModule.getDayBundle(getLocation(gmtDiff, dst), method,
+                toDate(epochDay, work.date), work.astroCache, work, times, offset);
+    }
+
+    /**
+     * @return time of Fajr, Shurooq, Zuhr, Assr, Maghrib, Ishaa, Imsaak, next day's Fajr, and
+     * next day's Imsaak respectively
+     * @see #getFullDaySeconds(long, double, double, int[], int)
+     */
+    public PrayerTime[] getFullDay(long epochDay, double gmtDiff, double dst) {
+        int[] times = new int[Prayer.FULL_DAY_TIMES];
+        return toPrayerTimes(times, getFullDaySeconds(epochDay, gmtDiff, dst, times, 0));
+    }
+
+    private CompiledLocation getLocation(double gmtDiff, double dst) {
+        CompiledLocation result = zoned;
+        if (result.gmtDiff != gmtDiff || result.dst != dst) {
+            result = location.withZone(gmtDiff, dst);
+            zoned = result;
+        }
+        return result;
+    }
+
+    /**
+     * Same as {@link #getLocation(double, double)} when the daylight saving time doesn't matter
+     */
+    private CompiledLocation getLocation(double gmtDiff) {
+        CompiledLocation result = zoned;
+        return result.gmtDiff == gmtDiff ? result : getLocation(gmtDiff, 0);
+    }
+
+    private static SDate toDate(long epochDay, SDate date) {
+        if (epochDay < MIN_EPOCH_DAY || epochDay > MAX_EPOCH_DAY)
+            throw new IllegalArgumentException("Epoch day out of range: " + epochDay);
+        Timetable.fromEpochDay((int) epochDay, date);
+        return date;
+    }
+
+    private static SDate toDate(int year, int month, int day, SDate date) {
+        date.year = year;
+        date.month = month;
+        date.day = day;
+        return date;
+    }
+
+    private static PrayerTime[] toPrayerTimes(int[] times, int extreme) {
+        PrayerTime[] result = new PrayerTime[times.length];
+        for (int i = 0; i < times.length; ++i)
+            result[i] = new PrayerTime(times[i], (extreme & (1 << i)) != 0);
+        return result;
+    }
+}
@@ -0,0 +1,92 @@
+/* Copyright (c) 2017, Fikrul Arif
+ * (under LGPL license - see COPYING file)
+ */
+package org.arabeyes.itl.prayertime;
+
+/**
+ * A prayer time (or Shurooq) as an instant, unlike {@link PrayerTime} which is a time of day.
+ * Instances are immutable.
+ */
+@SuppressWarnings("WeakerAccess")
+public final class PrayerEvent implements Comparable<PrayerEvent> {
+
+    private final long epochSecond;
+    private final TimeType type;
+    private final boolean extreme;
+
+    PrayerEvent(long epochSecond, TimeType type, boolean extreme) {
+        this.epochSecond = epochSecond;
+        this.type = type;
+        this.extreme = extreme;
+    }
+
+    /**
+     * @return seconds since 1970-01-01T00:00:00Z, see {@link Prayer#getEpochSeconds(long[], int)}
+     */
+    public long getEpochSecond() {
+        return epochSecond;
+    }
+
+    public TimeType getType() {
+        return type;
+    }
+
+    /**
+     * @see PrayerTime#isExtreme()
+     */
+    public boolean isExtreme() {
+        return extreme;
+    }
+
+    /**
+     * Returns string representation of this event in "TYPE@epochSecond [(extreme)]" format.
+     */
+    @Override
+    public String toString() {
+        return type + "@" + epochSecond + (extreme ? " (extreme)" : "");
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        PrayerEvent that = (PrayerEvent) o;
+        return epochSecond == that.epochSecond && type == that.type && extreme == that.extreme;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = (int) (epochSecond ^ (epochSecond >>> 32));
+        result = 31 * result + type.hashCode();
+        result = 31 * result + (extreme ? 1 : 0);
+        return result;
+    }
+
+    /**
+     * Inserts "event" at its place by instant among events[0] until events[count - 1], which
+     * are sorted. The times of a day are almost sorted already, so this is cheaper than sorting.
+     *
+     * @return the new count
+     */
+    static int insertSorted(PrayerEvent[] events, int count, PrayerEvent event) {
+        int j = count;
+        while (j > 0 && events[j - 1].epochSecond > event.epochSecond) {
+            events[j] = events[j - 1];
+            j--;
+        }
+        events[j] = event;
+        return count + 1;
+    }
+
+    /**
+     * See {@link Comparable#compareTo(Object)}. The instant is compared first, then the type,
+     * then the extreme status.
+     */
+    @Override
+    public int compareTo(PrayerEvent o) {
+        if (epochSecond != o.epochSecond) return epochSecond < o.epochSecond ? -1 : 1;
+        if (type != o.type) return type.ordinal() - o.type.ordinal();
+        return (extreme ? 1 : 0) - (o.extreme ? 1 : 0);
+    }
+}
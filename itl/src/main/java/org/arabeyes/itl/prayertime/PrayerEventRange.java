@@ -0,0 +1,140 @@
+/* Copyright (c) 2017, Fikrul Arif
+ * (under LGPL license - see COPYING file)
+ */
+package org.arabeyes.itl.prayertime;
+
+import org.arabeyes.itl.prayertime.AstroModule.Astro;
+import org.arabeyes.itl.prayertime.PrayerModule.CompiledLocation;
+import org.arabeyes.itl.prayertime.PrayerModule.CompiledMethod;
+import org.arabeyes.itl.prayertime.PrayerModule.SDate;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Prayer events of a location over a range of local dates, see
+ * {@link PrayerCalculator#getEvents(long, long, double, java.util.Set)}. Nothing is calculated
+ * until iterated, and each iterator calculates the days only as it advances, keeping its own
+ * window of the sun's values so each new day only computes one more day of them. The range may
+ * be split by date for processing the parts in parallel.
+ * <p>
+ * The events are ordered by date, and by instant within a date. Instances are immutable, but
+ * the iterators are not thread-safe.
+ */
+@SuppressWarnings("WeakerAccess")
+public final class PrayerEventRange implements Iterable<PrayerEvent> {
+
+    private final CompiledLocation location;
+    private final CompiledMethod method;
+    private final long startEpochDay;
+    private final long endEpochDay;
+    private final int mask;
+
+    PrayerEventRange(CompiledLocation location, CompiledMethod method, long startEpochDay,
+                     long endEpochDay, int mask) {
+        this.location = location;
+        this.method = method;
+        this.startEpochDay = startEpochDay;
+        this.endEpochDay = endEpochDay;
+        this.mask = mask;
+    }
+
+    /**
+     * @return first date as days since 1970-01-01
+     */
+    public long getStartEpochDay() {
+        return startEpochDay;
+    }
+
+    /**
+     * @return the date after the last one as days since 1970-01-01
+     */
+    public long getEndEpochDay() {
+        return endEpochDay;
+    }
+
+    /**
+     * Splits the range into at most "parts" consecutive ranges of about the same number of days,
+     * covering the same events in the same order when concatenated.
+     *
+     * @throws IllegalArgumentException if "parts" is not positive
+     */
+    public List<PrayerEventRange> split(int parts) {
+        if (parts <= 0)
+            throw new IllegalArgumentException("Non-positive parts: " + parts);
+
+        long days = endEpochDay - startEpochDay;
+        if (parts > days)
+            parts = (int) Math.max(days, 1);
+        List<PrayerEventRange> result = new ArrayList<PrayerEventRange>(parts);
+        long start = startEpochDay;
+        for (int i = 1; i <= parts; ++i) {
+            long end = startEpochDay + days / parts * i + Math.min(days % parts, i);
+            result.add(new PrayerEventRange(location, method, start, end, mask));
+            start = end;
+        }
+        return result;
+    }
+
+    @Override
+    public Iterator<PrayerEvent> iterator() {
+        return new EventIterator();
+    }
+
+    private final class EventIterator implements Iterator<PrayerEvent> {
+        private final TimeType[] types = TimeType.values();
+        private final Astro astroCache = new Astro();
+        private final SDate date = new SDate();
+        private final long[] seconds = new long[6];
+        private final PrayerEvent[] events = new PrayerEvent[6]; /* Of "day", sorted */
+        private long day = startEpochDay - 1;
+        private int count;
+        private int next;
+
+        @Override
+        public boolean hasNext() {
+            while (next == count) {
+                if (day + 1 >= endEpochDay)
+                    return false;
+                calculateDay(++day);
+            }
+            return true;
+        }
+
+        @Override
+        public PrayerEvent next() {
+            if (!hasNext())
+                throw new NoSuchElementException();
+            PrayerEvent result = events[next];
+            events[next++] = null;
+            return result;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+        private void calculateDay(long epochDay) {
+            Timetable.fromEpochDay((int) epochDay, date);
+            int extreme = PrayerModule.getEpochSeconds(location, method, date, astroCache,
+                    PrayerModule.getScratch(), mask, seconds, 0);
+            /* A time outside the window of its date would break the order of the dates */
+            long start = PrayerModule.getEpochMidnight(date, location.gmtDiff) -
+                    PrayerModule.DAY_MARGIN;
+            long end = start + 86400 + 2 * PrayerModule.DAY_MARGIN;
+            count = 0;
+            next = 0;
+            for (int i = 0; i < 6; ++i) {
+                long t = seconds[i];
+                if ((mask & 1 << i) == 0 || t == PrayerTime.INVALID_EPOCH_SECOND ||
+                        t < start || t >= end)
+                    continue;
+                count = PrayerEvent.insertSorted(events, count,
+                        new PrayerEvent(t, types[i], (extreme & 1 << i) != 0));
+            }
+        }
+    }
+}
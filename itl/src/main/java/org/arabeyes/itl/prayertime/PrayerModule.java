@@ -8,6 +8,9 @@ package org.arabeyes.itl.prayertime;
 
 import org.arabeyes.itl.prayertime.AstroModule.Astro;
 
+import java.util.Arrays;
+import java.util.Set;
+
 import static java.lang.Math.abs;
 import static java.lang.Math.acos;
 import static java.lang.Math.atan;
@@ -19,6 +22,7 @@ import static java.lang.Math.sin;
 import static java.lang.Math.tan;
 import static org.arabeyes.itl.prayertime.AstroModule.DEG_TO_10_BASE;
 import static org.arabeyes.itl.prayertime.AstroModule.DEG_TO_RAD;
+import static org.arabeyes.itl.prayertime.AstroModule.EARTH_RADIUS;
 import static org.arabeyes.itl.prayertime.AstroModule.INVALID_TRIGGER;
 import static org.arabeyes.itl.prayertime.AstroModule.RAD_TO_DEG;
 import static org.arabeyes.itl.prayertime.AstroModule.getAstroValuesByDay;
@@ -53,9 +57,9 @@ class PrayerModule {
         double degreeLong;  /* Longitude in decimal degree. */
         double degreeLat;   /* Latitude in decimal degree. */
         double gmtDiff;     /* GMT difference at regular time. */
-        int dst;            /* Daylight savings time switch (0 if not used).
+        double dst;         /* Daylight savings time switch (0 if not used).
                                Setting this to 1 should add 1 hour to all the
-                               calculated prayer times */
+                               calculated prayer times, 0.5 half an hour */
         double seaLevel;    /* Height above Sea level in meters */
         double pressure;    /* Atmospheric pressure in millibars (the
                                astronomical standard value is 1010) */
@@ -76,6 +80,219 @@ class PrayerModule {
         }
     }
 
+    /**
+     * Compiled form of {@link Location} used by the calculation. The values which depend only
+     * on the location are computed once here instead of on each call. It is immutable once
+     * shared, only an instance confined to a thread (see {@link Scratch#location}) is
+     * re-initialised by {@link #set(Location)}.
+     */
+    static final class CompiledLocation {
+        double degreeLong;
+        double degreeLat;
+        double gmtDiff;
+        double dst;
+        double seaLevel;
+        double pressure;
+        double temperature;
+
+        double rLat;       /* Latitude in radians */
+        double sinLat;
+        double cosLat;
+        double tpSin;      /* Geocentric position of the observer (p. 82) */
+        double tpCos;
+        double refraction; /* Pressure and temperature factor of the refraction */
+
+        CompiledLocation() {
+        }
+
+        CompiledLocation(Location loc) {
+            set(loc);
+        }
+
+        private CompiledLocation(double degreeLong, double degreeLat, double gmtDiff, double dst,
+                                 double seaLevel, double pressure, double temperature) {
+            set(degreeLong, degreeLat, gmtDiff, dst, seaLevel, pressure, temperature);
+        }
+
+        /**
+         * Re-initialise this location from loc, must not be used once this object is shared
+         */
+        void set(Location loc) {
+            set(loc.degreeLong, loc.degreeLat, loc.gmtDiff, loc.dst, loc.seaLevel, loc.pressure,
+                    loc.temperature);
+            /* The variant keeps its latitude, which is the nearest latitude of the method */
+            CompiledLocation variant = latitudeVariant;
+            if (variant != null)
+                variant.set(degreeLong, variant.degreeLat, gmtDiff, dst, seaLevel, pressure,
+                        temperature);
+        }
+
+        private void set(double degreeLong, double degreeLat, double gmtDiff, double dst,
+                         double seaLevel, double pressure, double temperature) {
+            this.degreeLong = degreeLong;
+            this.degreeLat = degreeLat;
+            this.gmtDiff = gmtDiff;
+            this.dst = dst;
+            this.seaLevel = seaLevel;
+            this.pressure = pressure;
+            this.temperature = temperature;
+
+            rLat = DEG_TO_RAD(degreeLat);
+            sinLat = sin(rLat);
+            cosLat = cos(rLat);
+            /* (p. 82, with b/a = 0.99664719) */
+            double tU = atan(0.99664719 * tan(rLat));
+            tpSin = 0.99664719 * sin(tU) + (seaLevel / EARTH_RADIUS) * sinLat;
+            tpCos = cos(tU) + (seaLevel / EARTH_RADIUS) * cosLat;
+            refraction = (pressure / 1010.0) * (283 / (273 + temperature));
+        }
+
+        /* Last result of withLatitude, which is always with the nearest latitude of the
+         * method. Volatile so that the fields, which aren't final, are seen by other threads. */
+        private volatile CompiledLocation latitudeVariant;
+
+        /**
+         * @return this location with another latitude
+         */
+        CompiledLocation withLatitude(double degreeLat) {
+            CompiledLocation result = latitudeVariant;
+            if (result == null || result.degreeLat != degreeLat) {
+                result = new CompiledLocation(degreeLong, degreeLat, gmtDiff, dst, seaLevel,
+                        pressure, temperature);
+                latitudeVariant = result;
+            }
+            return result;
+        }
+
+        /**
+         * @return this location with another GMT difference and daylight saving time, or this
+         * if they are the same
+         */
+        CompiledLocation withZone(double gmtDiff, double dst) {
+            if (gmtDiff == this.gmtDiff && dst == this.dst)
+                return this;
+            return new CompiledLocation(degreeLong, degreeLat, gmtDiff, dst, seaLevel, pressure,
+                    temperature);
+        }
+    }
+
+    /**
+     * Immutable form of {@link Method} used by the calculation, see {@link Method#compile()}. The
+     * values which depend only on the method are computed once here instead of on each call, so
+     * it can be shared by any threads without copying.
+     */
+    static final class CompiledMethod {
+        final StandardMethod method;
+        final double fajrAng;
+        final double ishaaAng;
+        final double imsaakAng;
+        final int fajrInv;
+        final int ishaaInv;
+        final int imsaakInv;
+        final Rounding round;
+        final Mathhab mathhab;
+        final double nearestLat;
+        final ExtremeMethod extreme;
+        final double extremeLat;
+        final int offset;
+        final double[] offList; /* Copy, never modified */
+        final Ephemeris ephemeris;
+
+        final double sinFajr;         /* sin(-fajrAng), see getFajIsh */
+        final double sinIshaa;        /* sin(-ishaaAng) */
+        final ExtremeHandler handler; /* Of "extreme", null if none */
+        final boolean intervals;      /* Whether fajrInv and ishaaInv are applied at the end */
+        /* The method with the Imsaak angle or interval for Fajr, or null if only the offset
+         * differs (see getImsaakByDay) */
+        final CompiledMethod imsaak;
+
+        CompiledMethod(Method src) {
+            this(src, src.fajrAng, src.fajrInv, false);
+        }
+
+        private CompiledMethod(Method src, double fajrAng, int fajrInv, boolean forImsaak) {
+            this.method = src.method;
+            this.fajrAng = fajrAng;
+            this.ishaaAng = src.ishaaAng;
+            this.imsaakAng = src.imsaakAng;
+            this.fajrInv = fajrInv;
+            this.ishaaInv = src.ishaaInv;
+            this.imsaakInv = src.imsaakInv;
+            this.round = src.round;
+            this.mathhab = src.mathhab;
+            this.nearestLat = src.nearestLat;
+            this.extreme = src.extreme;
+            this.extremeLat = src.extremeLat;
+            this.offset = src.offset;
+            this.offList = src.offList.clone();
+            this.ephemeris = src.ephemeris;
+
+            sinFajr = sin(DEG_TO_RAD(-fajrAng));
+            sinIshaa = sin(DEG_TO_RAD(-ishaaAng));
+            handler = extreme == null ? null : EXTREME_HANDLERS[extreme.ordinal()];
+            intervals = extreme != ExtremeMethod.MIN_INVALID &&
+                    extreme != ExtremeMethod.HALF_INVALID &&
+                    extreme != ExtremeMethod.HALF_ALWAYS;
+
+            if (forImsaak)
+                imsaak = null;
+            else if (fajrInv != 0)
+                imsaak = new CompiledMethod(src, fajrAng, fajrInv +
+                        (imsaakInv == 0 ? DEF_IMSAAK_INTERVAL : imsaakInv), true);
+            else if (imsaakInv != 0)
+                imsaak = null;
+            else imsaak = new CompiledMethod(src, fajrAng + imsaakAng, fajrInv, true);
+        }
+
+        /**
+         * @return whether this is compiled from the current values of "m"
+         */
+        boolean isOf(Method m) {
+            return method == m.method && fajrAng == m.fajrAng && ishaaAng == m.ishaaAng &&
+                    imsaakAng == m.imsaakAng && fajrInv == m.fajrInv &&
+                    ishaaInv == m.ishaaInv && imsaakInv == m.imsaakInv && round == m.round &&
+                    mathhab == m.mathhab && nearestLat == m.nearestLat &&
+                    extreme == m.extreme && extremeLat == m.extremeLat &&
+                    offset == m.offset && Arrays.equals(offList, m.offList) &&
+                    ephemeris == m.ephemeris;
+        }
+    }
+
+    /**
+     * Work areas of the calculation, so that nothing needs to be allocated for each call. Each
+     * thread has its own, see {@link #getScratch()}.
+     */
+    static final class Scratch {
+        /* 3-day window for callers which don't keep their own. The values only depend on the
+         * Julian day and the ephemeris, so it can be shared by all locations and methods. */
+        final Astro astroCache = new Astro();
+        final Astro tAstro = new Astro();
+        final Astro exAstroPrev = new Astro();
+        final Astro exAstroNext = new Astro();
+        final double[] tempPrayer = new double[6];
+        final SDate date = new SDate();
+        final double[] nutation = new double[2];   /* Of AstroModule.computeAstroDay */
+        /* Location of the batches, re-initialised for each of their locations */
+        final CompiledLocation location = new CompiledLocation();
+        /* Of the last getPrayerTimesByDay */
+        double dec;        /* Topocentric declination of the day in radians */
+        boolean invalid;   /* Some time couldn't be calculated normally */
+    }
+
+    private static final ThreadLocal<Scratch> SCRATCH = new ThreadLocal<Scratch>() {
+        @Override
+        protected Scratch initialValue() {
+            return new Scratch();
+        }
+    };
+
+    private static final TimeType[] TIME_TYPES = TimeType.values();
+
+    /* Seconds before the midnight starting the date and after the one ending it, within which
+     * the valid epoch seconds of the date lie (see getEpochSeconds). The extreme latitude
+     * methods can move the times from the day by about half a day. */
+    static final long DAY_MARGIN = 86400;
+
     /* Defaults */
     private static final double KAABA_LAT = 21.423333;
     private static final double KAABA_LONG = 39.823333;
@@ -85,14 +302,25 @@ class PrayerModule {
     private static final int DEF_IMSAAK_INTERVAL = 10;
     private static final int DEF_ROUND_SEC = 30;
     private static final int AGGRESSIVE_ROUND_SEC = 1;
+    /* Masks of the six times, bit i for the i-th time */
+    static final int ALL_TIMES = (1 << 6) - 1;
+    private static final int FAJR_ISHAA = 1 << 0 | 1 << 5;
 
     private PrayerModule() {
     }
 
-    /* Astro astroCache;  This global variable is used for caching values between
-     * multiple getPrayerTimesByDay() calls. You can disable this
-     * caching feature by moving this line to the start of the
-     * getPrayerTimesByDay() function. */
+    /**
+     * @return work areas of the current thread
+     */
+    static Scratch getScratch() {
+        return SCRATCH.get();
+    }
+
+    /* Astro astroCache;  In the original C code this global variable is used for
+     * caching values between multiple getPrayerTimesByDay() calls. Here it is
+     * passed by the caller instead, to avoid race condition between threads. A
+     * caller computing consecutive days should pass the same instance for all of
+     * them, so only one new day is computed each time. */
 
     /**
      * The "getPrayerTimes" function fills an array of six Prayer structures
@@ -104,393 +332,663 @@ class PrayerModule {
      * - ... and so on until...
      * - Prayer[5].minute    is today's Ishaa minutes
      */
-    static PrayerTime[] getPrayerTimes(Location loc, Method conf, SDate date) {
+    static PrayerTime[] getPrayerTimes(CompiledLocation loc, CompiledMethod conf, SDate date) {
+        return getPrayerTimes(loc, conf, date, getScratch().astroCache);
+    }
+
+    /**
+     * Same as {@link #getPrayerTimes(CompiledLocation, CompiledMethod, SDate)}, but the 3-day
+     * astronomical values are kept in "astroCache". Passing the same instance for consecutive days
+     * (either forward or backward) makes each call compute only one new day instead of three.
+     */
+    static PrayerTime[] getPrayerTimes(CompiledLocation loc, CompiledMethod conf, SDate date,
+                                       Astro astroCache) {
+        int[] times = new int[6];
+        int extreme = getPrayerTimes(loc, conf, date, astroCache, getScratch(), times, 0);
         PrayerTime[] pt = new PrayerTime[6];
         for (int i = 0; i < pt.length; ++i)
-            pt[i] = new PrayerTime();
-        DayInfo di = getDayInfo(date, loc.gmtDiff);
-        getPrayerTimesByDay(loc, conf, di.lastDay, di.dayOfYear, di.julianDay, pt, TimeType.FAJR);
+            pt[i] = new PrayerTime(times[i], (extreme & (1 << i)) != 0);
         return pt;
     }
 
-    private static void getPrayerTimesByDay(Location loc, Method conf,
-                                            int lastDay, int dayOfYear, double julianDay,
-                                            PrayerTime[] pt, TimeType type) {
+    /**
+     * Same as {@link #getPrayerTimes(CompiledLocation, CompiledMethod, SDate, Astro)}, but the
+     * times are stored as seconds of day (see {@link PrayerTime#getSecondOfDay()}) in times[off]
+     * until times[off + 5]. Nothing is allocated here as long as the geocentric values of the days
+     * are already cached (see {@link AstroModule#getAstroValuesByDay}).
+     *
+     * @return extreme status, bit i is set if the i-th time is calculated through extreme
+     * latitude methods
+     */
+    static int getPrayerTimes(CompiledLocation loc, CompiledMethod conf, SDate date,
+                              Astro astroCache, Scratch work, int[] times, int off) {
+        return getPrayerTimes(loc, conf, date, astroCache, work, ALL_TIMES, times, off);
+    }
+
+    /**
+     * Same as {@link #getPrayerTimes(CompiledLocation, CompiledMethod, SDate, Astro, Scratch,
+     * int[], int)}, but only the times in "mask" (bit i for the i-th time) are calculated, and
+     * only their elements of "times" are stored. The results are the same as calculating all.
+     *
+     * @return extreme status of the requested times
+     */
+    static int getPrayerTimes(CompiledLocation loc, CompiledMethod conf, SDate date,
+                              Astro astroCache, Scratch work, int mask, int[] times, int off) {
+        int extreme = getPrayerTimesByDay(loc, conf, getDayofYear(date.year, 12, 31),
+                getDayofYear(date.year, date.month, date.day), getJulianDay(date, loc.gmtDiff),
+                astroCache, work, mask);
+        for (int i = 0; i < 6; i++) {
+            if ((mask & 1 << i) != 0)
+                times[off + i] = base6hm(work.tempPrayer[i], loc, conf, TIME_TYPES[i]);
+        }
+        return extreme;
+    }
+
+    /**
+     * Same as {@link #getPrayerTimes(CompiledLocation, CompiledMethod, SDate, Astro, Scratch,
+     * int[], int)}, but the times are stored as Base-10 numbers (99 if invalid) in hours[off]
+     * until hours[off + 5], before the offsets, rounding, and daylight saving time, which can be
+     * applied later by {@link #base6hm(double, double, CompiledMethod, TimeType)}.
+     */
+    static int getRawPrayerTimes(CompiledLocation loc, CompiledMethod conf, SDate date,
+                                 Astro astroCache, Scratch work, double[] hours, int off) {
+        int extreme = getPrayerTimesByDay(loc, conf, getDayofYear(date.year, 12, 31),
+                getDayofYear(date.year, date.month, date.day), getJulianDay(date, loc.gmtDiff),
+                astroCache, work);
+        System.arraycopy(work.tempPrayer, 0, hours, off, 6);
+        return extreme;
+    }
+
+    /**
+     * @return mask of the six times in "types" (bit i for the i-th time), the other types are
+     * ignored
+     */
+    static int getTimeMask(Set<TimeType> types) {
+        int mask = 0;
+        for (int i = 0; i < 6; i++) {
+            if (types.contains(TIME_TYPES[i]))
+                mask |= 1 << i;
+        }
+        return mask;
+    }
+
+    /**
+     * Fills "work.tempPrayer" with the six times of the day as Base-10 numbers (99 if invalid),
+     * before the offsets, rounding, and daylight saving time of {@link #base6hm}.
+     *
+     * @return extreme status, bit i is set if tempPrayer[i] is calculated through extreme
+     * latitude methods
+     */
+    private static int getPrayerTimesByDay(CompiledLocation loc, CompiledMethod conf,
+                                           int lastDay, int dayOfYear, double julianDay,
+                                           Astro astroCache, Scratch work) {
+        return getPrayerTimesByDay(loc, conf, lastDay, dayOfYear, julianDay, astroCache, work,
+                ALL_TIMES);
+    }
 
-        int i, invalid;
+    /**
+     * Same as {@link #getPrayerTimesByDay(CompiledLocation, CompiledMethod, int, int, double,
+     * Astro, Scratch)}, but only the times in "mask" (bit i for tempPrayer[i]) are guaranteed to
+     * be calculated, the others may be left as 99. The formulae which none of the requested times
+     * depend on are skipped, and so is the extreme latitude method if it cannot change them.
+     *
+     * @return extreme status of the requested times
+     */
+    private static int getPrayerTimesByDay(CompiledLocation loc, CompiledMethod conf,
+                                           int lastDay, int dayOfYear, double julianDay,
+                                           Astro astroCache, Scratch work, int mask) {
+
+        int invalid, extreme = 0, need;
         double zu, sh, mg, fj, is, ar;
         double lat, lon, dec;
-        double[] tempPrayer = new double[6];
-        /* made as a local variable to avoid race condition between threads */
-        Astro astroCache = new Astro();
-        Astro tAstro = new Astro();
+        final double[] tempPrayer = work.tempPrayer;
+        final Astro tAstro = work.tAstro;
 
         lat = loc.degreeLat;
         lon = loc.degreeLong;
-        invalid = 0;
 
         /* Start by filling the tAstro structure with the appropriate astronomical
          * values for this day. We also pass the cache structure to update and check
          * if the actual values are already available. */
-        getAstroValuesByDay(julianDay, loc, astroCache, tAstro);
+        getAstroValuesByDay(julianDay, loc, conf.ephemeris, astroCache, tAstro);
         dec = DEG_TO_RAD(tAstro.dec[1]);
 
-        /* Get Prayer Times formulae results for this day of year and this
-         * setLocation. The results are NOT the actual prayer times */
-        fj = getFajIsh(lat, dec, conf.fajrAng);
-        sh = getSunrise(loc, tAstro);
-        zu = getZuhr(lon, tAstro);
-        ar = getAssr(lat, dec, conf.mathhab);
-        mg = getSunset(loc, tAstro);
-        is = getFajIsh(lat, dec, conf.ishaaAng);
+        /* Fajr and Ishaa may be derived from Shurooq and Maghrib respectively */
+        need = mask;
+        if (conf.fajrInv != 0 || conf.method == StandardMethod.MOONSIGHTING_COMMITTEE)
+            need |= (need & 1 << 0) << 1;
+        if (conf.ishaaInv != 0 || conf.method == StandardMethod.MOONSIGHTING_COMMITTEE)
+            need |= (need & 1 << 5) >> 1;
+
+        for (;;) {
+            invalid = 0;
+
+            /* Get Prayer Times formulae results for this day of year and this
+             * setLocation. The results are NOT the actual prayer times */
+            fj = (need & 1 << 0) != 0 ? getFajIsh(loc, dec, conf.sinFajr) : 99;
+            sh = (need & 1 << 1) != 0 ? getSunrise(loc, tAstro) : 99;
+            zu = getZuhr(lon, tAstro);
+            ar = (need & 1 << 3) != 0 ? getAssr(loc, dec, conf.mathhab) : 99;
+            mg = (need & 1 << 4) != 0 ? getSunset(loc, tAstro) : 99;
+            is = (need & 1 << 5) != 0 ? getFajIsh(loc, dec, conf.sinIshaa) : 99;
     
-        /* Calculate all prayer times as Base-10 numbers in Normal circumstances */
-        /* Fajr */
-        if (fj == 99) {
-            tempPrayer[0] = 99;
-            if (conf.method != StandardMethod.MOONSIGHTING_COMMITTEE) {
+            /* Calculate all prayer times as Base-10 numbers in Normal circumstances */
+            /* Fajr */
+            if (fj == 99) {
+                tempPrayer[0] = 99;
+                if (conf.method != StandardMethod.MOONSIGHTING_COMMITTEE) {
+                    invalid = 1;
+                }
+            } else tempPrayer[0] = zu - fj;
+
+            if (sh == 99)
                 invalid = 1;
-            }
-        } else tempPrayer[0] = zu - fj;
+            tempPrayer[1] = sh;
+
+            tempPrayer[2] = zu;
 
-        if (sh == 99)
-            invalid = 1;
-        tempPrayer[1] = sh;
+            /* Assr */
+            if (ar == 99) {
+                tempPrayer[3] = 99;
+                invalid = 1;
+            } else tempPrayer[3] = zu + ar;
 
-        tempPrayer[2] = zu;
 
-        /* Assr */
-        if (ar == 99) {
-            tempPrayer[3] = 99;
-            invalid = 1;
-        } else tempPrayer[3] = zu + ar;
+            if (mg == 99)
+                invalid = 1;
+            tempPrayer[4] = mg;
 
 
-        if (mg == 99)
-            invalid = 1;
-        tempPrayer[4] = mg;
+            /* Ishaa */
+            if (is == 99) {
+                tempPrayer[5] = 99;
+                if (conf.method != StandardMethod.MOONSIGHTING_COMMITTEE) {
+                    invalid = 1;
+                }
+            } else tempPrayer[5] = zu + is;
 
 
-        /* Ishaa */
-        if (is == 99) {
-            tempPrayer[5] = 99;
-            if (conf.method != StandardMethod.MOONSIGHTING_COMMITTEE) {
-                invalid = 1;
-            }
-        } else tempPrayer[5] = zu + is;
+            if (conf.method == StandardMethod.MOONSIGHTING_COMMITTEE) {
+                tempPrayer[0] = getSeasonalFajr(lat, dayOfYear, tempPrayer[0], tempPrayer[1]);
+                tempPrayer[5] = getSeasonalIsha(lat, dayOfYear, tempPrayer[5], tempPrayer[4]);
 
+                if (tempPrayer[0] == 99 || tempPrayer[5] == 99) {
+                    invalid = 1;
+                }
 
-        if (conf.method == StandardMethod.MOONSIGHTING_COMMITTEE) {
-            tempPrayer[0] = getSeasonalFajr(lat, dayOfYear, tempPrayer[0], tempPrayer[1]);
-            tempPrayer[5] = getSeasonalIsha(lat, dayOfYear, tempPrayer[5], tempPrayer[4]);
+                if (tempPrayer[2] != 99) {
+                    tempPrayer[2] += (5.0 / 60.0);
+                }
 
-            if (tempPrayer[0] == 99 || tempPrayer[5] == 99) {
+                if (tempPrayer[4] != 99) {
+                    tempPrayer[4] += (3.0 / 60.0);
+                }
+            }
+    
+            /* Re-calculate Fajr and Ishaa in Extreme Latitudes */
+            if (lat > conf.extremeLat) {
+                tempPrayer[0] = 99;
+                tempPrayer[5] = 99;
                 invalid = 1;
             }
 
-            if (tempPrayer[2] != 99) {
-                tempPrayer[2] += (5.0 / 60.0);
+            /* The skipped times are 99 here, so "invalid" may be wrong. It does not matter if
+             * the extreme latitude method cannot change the requested times, or only replaces
+             * the invalid ones of them, otherwise everything is needed. */
+            if (need == ALL_TIMES || conf.handler == null ||
+                    (invalid == 0 && !conf.handler.always) ||
+                    (mask & conf.handler.modifies) == 0 ||
+                    (conf.handler.perTime && ((mask & 1 << 0) == 0 || tempPrayer[0] != 99) &&
+                            ((mask & 1 << 5) == 0 || tempPrayer[5] != 99)))
+                break;
+            need = ALL_TIMES;
+        }
+
+        work.dec = dec;
+        work.invalid = invalid == 1 || need != ALL_TIMES;
+
+        if (conf.handler != null && (invalid == 1 || conf.handler.always) && need == ALL_TIMES)
+            extreme = conf.handler.apply(loc, conf, lastDay, julianDay, zu, dec, astroCache, work);
+
+        /* Apply intervals if set */
+        if (conf.intervals) {
+            if (conf.fajrInv != 0) {
+                if (tempPrayer[1] != 99)
+                    tempPrayer[0] = tempPrayer[1] - (conf.fajrInv / 60.0);
+                else tempPrayer[0] = 99;
             }
 
-            if (tempPrayer[4] != 99) {
-                tempPrayer[4] += (3.0 / 60.0);
+            if (conf.ishaaInv != 0) {
+                if (tempPrayer[4] != 99)
+                    tempPrayer[5] = tempPrayer[4] + (conf.ishaaInv / 60.0);
+                else tempPrayer[5] = 99;
             }
         }
-    
-        /* Re-calculate Fajr and Ishaa in Extreme Latitudes */
-        if (lat > conf.extremeLat) {
-            tempPrayer[0] = 99;
-            tempPrayer[5] = 99;
-            invalid = 1;
+
+        return extreme & mask;
+    }
+
+    /**
+     * Extreme latitude method, which re-calculates some of the times of "work.tempPrayer" in
+     * {@link #getPrayerTimesByDay}. Each {@link ExtremeMethod} has one shared handler, see
+     * {@link CompiledMethod#handler}.
+     */
+    abstract static class ExtremeHandler {
+        final boolean always; /* Applied even if all times can be calculated normally */
+        final int modifies; /* Bit i is set if tempPrayer[i] may be re-calculated or flagged */
+        final boolean perTime; /* Only the invalid times are re-calculated, independently */
+
+        ExtremeHandler(boolean always, int modifies, boolean perTime) {
+            this.always = always;
+            this.modifies = modifies;
+            this.perTime = perTime;
         }
 
-        /* Reset status of extreme switches */
-        for (i = 0; i < 6; i++)
-            pt[i].isExtreme = 0;
-
-        if ((conf.extreme != ExtremeMethod.NONE_EX) && ((invalid == 1) ||
-                (conf.extreme == ExtremeMethod.LAT_ALL ||
-                        conf.extreme == ExtremeMethod.LAT_ALWAYS ||
-                        conf.extreme == ExtremeMethod.GOOD_ALL ||
-                        conf.extreme == ExtremeMethod.SEVEN_NIGHT_ALWAYS ||
-                        conf.extreme == ExtremeMethod.SEVEN_DAY_ALWAYS ||
-                        conf.extreme == ExtremeMethod.HALF_ALWAYS ||
-                        conf.extreme == ExtremeMethod.MIN_ALWAYS)
-        )) {
-            double exdecPrev, exdecNext;
-            double exZu = 99, exFj = 99, exIs = 99, exAr = 99, exSh = 99, exMg = 99;
-            double portion = 0;
-            double nGoodDay;
-            int exinterval;
-            final Location exLoc = new Location(loc);
-            final Astro exAstroPrev;
-            final Astro exAstroNext;
-            double fajrDiff, ishaDiff;
+        /**
+         * @param zu  Zuhr of the day
+         * @param dec topocentric declination of the day in radians
+         * @return extreme status, bit i is set if tempPrayer[i] is re-calculated
+         */
+        abstract int apply(CompiledLocation loc, CompiledMethod conf, int lastDay,
+                           double julianDay, double zu, double dec, Astro astroCache,
+                           Scratch work);
+    }
 
-            switch (conf.extreme) {
-                /* Angle Based */
+    private static final ExtremeHandler[] EXTREME_HANDLERS =
+            new ExtremeHandler[ExtremeMethod.values().length];
+
+    static {
+        for (ExtremeMethod m : ExtremeMethod.values()) {
+            switch (m) {
+                case NONE_EX:
+                    break;
                 case ANGLE_BASED:
-                    portion = ((24 - tempPrayer[4]) + tempPrayer[1]);
-                    fajrDiff = (1 / 60.0 * conf.fajrAng) * portion;
-                    ishaDiff = (1 / 60.0 * conf.ishaaAng) * portion;
-
-                    tempPrayer[0] = tempPrayer[1] - fajrDiff;
-                    tempPrayer[5] = tempPrayer[4] + ishaDiff;
-                    pt[0].isExtreme = 1;
-                    pt[5].isExtreme = 1;
+                    EXTREME_HANDLERS[m.ordinal()] = new AngleBased();
                     break;
-            
-                /* Nearest Latitude (Method.nearestLat) */
                 case LAT_ALL:
                 case LAT_ALWAYS:
                 case LAT_INVALID:
-
-                    /* FIXIT: we cannot compute this when interval is set because
-                     * angle==0 . Only the if-invalid methods would work */
-                    exLoc.degreeLat = conf.nearestLat;
-                    exFj = getFajIsh(conf.nearestLat, dec, conf.fajrAng);
-                    /*exIm = getFajIsh(conf.nearestLat, dec, conf.imsaakAng);*/
-                    exSh = getSunrise(exLoc, tAstro);
-                    exAr = getAssr(conf.nearestLat, dec, conf.mathhab);
-                    exMg = getSunset(exLoc, tAstro);
-                    exIs = getFajIsh(conf.nearestLat, dec, conf.ishaaAng);
-
-
-                    switch (conf.extreme) {
-                        case LAT_ALL:
-                            tempPrayer[0] = zu - exFj;
-                            tempPrayer[1] = exSh;
-                            tempPrayer[3] = zu + exAr;
-                            tempPrayer[4] = exMg;
-                            tempPrayer[5] = zu + exIs;
-                            pt[0].isExtreme = 1;
-                            pt[1].isExtreme = 1;
-                            pt[2].isExtreme = 1;
-                            pt[3].isExtreme = 1;
-                            pt[4].isExtreme = 1;
-                            pt[5].isExtreme = 1;
-                            break;
-
-                        case LAT_ALWAYS:
-                            tempPrayer[0] = zu - exFj;
-                            tempPrayer[5] = zu + exIs;
-                            pt[0].isExtreme = 1;
-                            pt[5].isExtreme = 1;
-                            break;
-
-                        case LAT_INVALID:
-                            if (tempPrayer[0] == 99) {
-                                tempPrayer[0] = zu - exFj;
-                                pt[0].isExtreme = 1;
-                            }
-                            if (tempPrayer[5] == 99) {
-                                tempPrayer[5] = zu + exIs;
-                                pt[5].isExtreme = 1;
-                            }
-                            break;
-                    }
+                    EXTREME_HANDLERS[m.ordinal()] = new NearestLatitude(m);
                     break;
-
-
-                /* Nearest Good Day */
                 case GOOD_ALL:
                 case GOOD_INVALID:
                 case GOOD_INVALID_SAME:
-
-                    exAstroPrev = new Astro(astroCache);
-                    exAstroNext = new Astro(astroCache);
-
-                    /* Start by getting last or next nearest Good Day */
-                    for (i = 0; i <= lastDay; i++) {
-
-                        /* Last closest day */
-                        nGoodDay = julianDay - i;
-                        getAstroValuesByDay(nGoodDay, loc, exAstroPrev, tAstro);
-                        exdecPrev = DEG_TO_RAD(tAstro.dec[1]);
-                        exFj = getFajIsh(lat, exdecPrev, conf.fajrAng);
-                        if (exFj != 99) {
-                            exIs = getFajIsh(lat, exdecPrev, conf.ishaaAng);
-                            if (exIs != 99) {
-                                exZu = getZuhr(lon, tAstro);
-                                exSh = getSunrise(loc, tAstro);
-                                exAr = getAssr(lat, exdecPrev, conf.mathhab);
-                                exMg = getSunset(loc, tAstro);
-                                break;
-                            }
-                        }
-
-                        /* Next closest day */
-                        nGoodDay = julianDay + i;
-                        getAstroValuesByDay(nGoodDay, loc, exAstroNext, tAstro);
-                        exdecNext = DEG_TO_RAD(tAstro.dec[1]);
-                        exFj = getFajIsh(lat, exdecNext, conf.fajrAng);
-                        if (exFj != 99) {
-                            exIs = getFajIsh(lat, exdecNext, conf.ishaaAng);
-                            if (exIs != 99) {
-                                exZu = getZuhr(lon, tAstro);
-                                exSh = getSunrise(loc, tAstro);
-                                exAr = getAssr(lat, exdecNext, conf.mathhab);
-                                exMg = getSunset(loc, tAstro);
-                                break;
-                            }
-                        }
-                    }
-
-                    switch (conf.extreme) {
-                        case GOOD_ALL:
-                            tempPrayer[0] = exZu - exFj;
-                            tempPrayer[1] = exSh;
-                            tempPrayer[2] = exZu;
-                            tempPrayer[3] = exZu + exAr;
-                            tempPrayer[4] = exMg;
-                            tempPrayer[5] = exZu + exIs;
-                            for (i = 0; i < 6; i++)
-                                pt[i].isExtreme = 1;
-                            break;
-                        case GOOD_INVALID:
-                            if (tempPrayer[0] == 99) {
-                                tempPrayer[0] = exZu - exFj;
-                                pt[0].isExtreme = 1;
-                            }
-                            if (tempPrayer[5] == 99) {
-                                tempPrayer[5] = exZu + exIs;
-                                pt[5].isExtreme = 1;
-                            }
-                            break;
-                        case GOOD_INVALID_SAME:
-                            if ((tempPrayer[0] == 99) || (tempPrayer[5] == 99)) {
-                                tempPrayer[0] = exZu - exFj;
-                                pt[0].isExtreme = 1;
-                                tempPrayer[5] = exZu + exIs;
-                                pt[5].isExtreme = 1;
-                            }
-                            break;
-                    }
+                    EXTREME_HANDLERS[m.ordinal()] = new NearestGoodDay(m);
                     break;
-
                 case SEVEN_NIGHT_ALWAYS:
-                case SEVEN_NIGHT_INVALID:
                 case SEVEN_DAY_ALWAYS:
-                case SEVEN_DAY_INVALID:
                 case HALF_ALWAYS:
+                    EXTREME_HANDLERS[m.ordinal()] = new Portion(true);
+                    break;
+                case SEVEN_NIGHT_INVALID:
+                case SEVEN_DAY_INVALID:
                 case HALF_INVALID:
+                    EXTREME_HANDLERS[m.ordinal()] = new Portion(false);
+                    break;
+                case MIN_ALWAYS:
+                    EXTREME_HANDLERS[m.ordinal()] = new MinAlways();
+                    break;
+                case MIN_INVALID:
+                    EXTREME_HANDLERS[m.ordinal()] = new MinInvalid();
+                    break;
+            }
+        }
+    }
 
-                    /* FIXIT: For clarity, we may need to move the HALF_* methods
-                     * into their own separate case statement. */
-                    switch (conf.extreme) {
-                        case SEVEN_NIGHT_ALWAYS:
-                        case SEVEN_NIGHT_INVALID:
-                            portion = (24 - (tempPrayer[4] - tempPrayer[1])) * (1 / 7.0);
-                            break;
-                        case SEVEN_DAY_ALWAYS:
-                        case SEVEN_DAY_INVALID:
-                            portion = (tempPrayer[4] - tempPrayer[1]) * (1 / 7.0);
-                            break;
-                        case HALF_ALWAYS:
-                        case HALF_INVALID:
-                            portion = (24 - tempPrayer[4] - tempPrayer[1]) * (1 / 2.0);
-                            break;
-                    }
+    /* Angle Based */
+    private static final class AngleBased extends ExtremeHandler {
+        AngleBased() {
+            super(false, FAJR_ISHAA, false);
+        }
+
+        @Override
+        int apply(CompiledLocation loc, CompiledMethod conf, int lastDay, double julianDay,
+                  double zu, double dec, Astro astroCache, Scratch work) {
+            final double[] tempPrayer = work.tempPrayer;
+            double portion, fajrDiff, ishaDiff;
+
+            if (tempPrayer[1] == 99 || tempPrayer[4] == 99) {
+                /* No night to divide */
+                tempPrayer[0] = 99;
+                tempPrayer[5] = 99;
+                return 1 << 0 | 1 << 5;
+            }
+            portion = ((24 - tempPrayer[4]) + tempPrayer[1]);
+            fajrDiff = (1 / 60.0 * conf.fajrAng) * portion;
+            ishaDiff = (1 / 60.0 * conf.ishaaAng) * portion;
 
+            tempPrayer[0] = tempPrayer[1] - fajrDiff;
+            tempPrayer[5] = tempPrayer[4] + ishaDiff;
+            return 1 << 0 | 1 << 5;
+        }
+    }
 
-                    if (conf.extreme == ExtremeMethod.SEVEN_NIGHT_INVALID ||
-                            conf.extreme == ExtremeMethod.SEVEN_DAY_INVALID ||
-                            conf.extreme == ExtremeMethod.HALF_INVALID) {
-                        if (tempPrayer[0] == 99) {
-                            if (conf.extreme == ExtremeMethod.HALF_INVALID)
-                                tempPrayer[0] = portion - (conf.fajrInv / 60.0);
-                            else tempPrayer[0] = tempPrayer[1] - portion;
-                            pt[0].isExtreme = 1;
-                        }
-                        if (tempPrayer[5] == 99) {
-                            if (conf.extreme == ExtremeMethod.HALF_INVALID)
-                                tempPrayer[5] = portion + (conf.ishaaInv / 60.0);
-                            else tempPrayer[5] = tempPrayer[4] + portion;
-                            pt[5].isExtreme = 1;
-                        }
-                    } else { /* for the always methods */
-
-                        if (conf.extreme == ExtremeMethod.HALF_ALWAYS) {
-                            tempPrayer[0] = portion - (conf.fajrInv / 60.0);
-                            tempPrayer[5] = portion + (conf.ishaaInv / 60.0);
-                        } else {
-                            tempPrayer[0] = tempPrayer[1] - portion;
-                            tempPrayer[5] = tempPrayer[4] + portion;
-                        }
-                        pt[0].isExtreme = 1;
-                        pt[5].isExtreme = 1;
-                    }
+    /* Nearest Latitude (Method.nearestLat) */
+    private static final class NearestLatitude extends ExtremeHandler {
+        NearestLatitude(ExtremeMethod m) {
+            super(m != ExtremeMethod.LAT_INVALID,
+                    m == ExtremeMethod.LAT_ALL ? ALL_TIMES : FAJR_ISHAA,
+                    m == ExtremeMethod.LAT_INVALID);
+        }
+
+        @Override
+        int apply(CompiledLocation loc, CompiledMethod conf, int lastDay, double julianDay,
+                  double zu, double dec, Astro astroCache, Scratch work) {
+            final double[] tempPrayer = work.tempPrayer;
+            final Astro tAstro = work.tAstro;
+            final CompiledLocation exLoc;
+            double exFj, exIs, exAr, exSh, exMg;
+            int i, extreme = 0;
+
+            /* FIXIT: we cannot compute this when interval is set because
+             * angle==0 . Only the if-invalid methods would work */
+            exLoc = loc.withLatitude(conf.nearestLat);
+            exFj = getFajIsh(exLoc, dec, conf.sinFajr);
+            /*exIm = getFajIsh(exLoc, dec, conf.imsaakAng);*/
+            exSh = getSunrise(exLoc, tAstro);
+            exAr = getAssr(exLoc, dec, conf.mathhab);
+            exMg = getSunset(exLoc, tAstro);
+            exIs = getFajIsh(exLoc, dec, conf.sinIshaa);
+
+
+            switch (conf.extreme) {
+                case LAT_ALL:
+                    tempPrayer[0] = minus(zu, exFj);
+                    tempPrayer[1] = exSh;
+                    tempPrayer[3] = plus(zu, exAr);
+                    tempPrayer[4] = exMg;
+                    tempPrayer[5] = plus(zu, exIs);
+                    for (i = 0; i < 6; i++)
+                        extreme |= 1 << i;
                     break;
 
-                case MIN_ALWAYS:
-                    /* Do nothing here because this is implemented through fajrInv and
-                     * ishaaInv structure members */
-                    tempPrayer[0] = tempPrayer[1];
-                    tempPrayer[5] = tempPrayer[4];
-                    pt[0].isExtreme = 1;
-                    pt[5].isExtreme = 1;
+                case LAT_ALWAYS:
+                    tempPrayer[0] = minus(zu, exFj);
+                    tempPrayer[5] = plus(zu, exIs);
+                    extreme |= 1 << 0;
+                    extreme |= 1 << 5;
                     break;
 
-                case MIN_INVALID:
+                case LAT_INVALID:
                     if (tempPrayer[0] == 99) {
-                        exinterval = (int) (conf.fajrInv / 60.0);
-                        tempPrayer[0] = tempPrayer[1] - exinterval;
-                        pt[0].isExtreme = 1;
+                        tempPrayer[0] = minus(zu, exFj);
+                        extreme |= 1 << 0;
                     }
                     if (tempPrayer[5] == 99) {
-                        exinterval = (int) (conf.ishaaInv / 60.0);
-                        tempPrayer[5] = tempPrayer[4] + exinterval;
-                        pt[5].isExtreme = 1;
+                        tempPrayer[5] = plus(zu, exIs);
+                        extreme |= 1 << 5;
                     }
                     break;
-            } /* end switch */
-        } /* end extreme */
+            }
+            return extreme;
+        }
+    }
 
-        /* Apply intervals if set */
-        if (conf.extreme != ExtremeMethod.MIN_INVALID &&
-                conf.extreme != ExtremeMethod.HALF_INVALID &&
-                conf.extreme != ExtremeMethod.HALF_ALWAYS) {
-            if (conf.fajrInv != 0) {
-                if (tempPrayer[1] != 99)
-                    tempPrayer[0] = tempPrayer[1] - (conf.fajrInv / 60.0);
-                else tempPrayer[0] = 99;
+    /* Nearest Good Day */
+    private static final class NearestGoodDay extends ExtremeHandler {
+        NearestGoodDay(ExtremeMethod m) {
+            super(m == ExtremeMethod.GOOD_ALL, m == ExtremeMethod.GOOD_ALL ? ALL_TIMES : FAJR_ISHAA,
+                    m == ExtremeMethod.GOOD_INVALID);
+        }
+
+        @Override
+        int apply(CompiledLocation loc, CompiledMethod conf, int lastDay, double julianDay,
+                  double zu, double dec, Astro astroCache, Scratch work) {
+            final double[] tempPrayer = work.tempPrayer;
+            final Astro tAstro = work.tAstro;
+            final Astro exAstroPrev = work.exAstroPrev;
+            final Astro exAstroNext = work.exAstroNext;
+            double exdecPrev, exdecNext;
+            double exZu = 99, exFj = 99, exIs = 99, exAr = 99, exSh = 99, exMg = 99;
+            double nGoodDay;
+            int i, extreme = 0;
+
+            exAstroPrev.set(astroCache);
+            exAstroNext.set(astroCache);
+
+            /* Start by getting last or next nearest Good Day */
+            for (i = 0; i <= lastDay; i++) {
+
+                /* Last closest day */
+                nGoodDay = julianDay - i;
+                getAstroValuesByDay(nGoodDay, loc, conf.ephemeris, exAstroPrev, tAstro);
+                exdecPrev = DEG_TO_RAD(tAstro.dec[1]);
+                exFj = getFajIsh(loc, exdecPrev, conf.sinFajr);
+                if (exFj != 99) {
+                    exIs = getFajIsh(loc, exdecPrev, conf.sinIshaa);
+                    if (exIs != 99) {
+                        exZu = getZuhr(loc.degreeLong, tAstro);
+                        exSh = getSunrise(loc, tAstro);
+                        exAr = getAssr(loc, exdecPrev, conf.mathhab);
+                        exMg = getSunset(loc, tAstro);
+                        break;
+                    }
+                }
+
+                /* Next closest day */
+                nGoodDay = julianDay + i;
+                getAstroValuesByDay(nGoodDay, loc, conf.ephemeris, exAstroNext, tAstro);
+                exdecNext = DEG_TO_RAD(tAstro.dec[1]);
+                exFj = getFajIsh(loc, exdecNext, conf.sinFajr);
+                if (exFj != 99) {
+                    exIs = getFajIsh(loc, exdecNext, conf.sinIshaa);
+                    if (exIs != 99) {
+                        exZu = getZuhr(loc.degreeLong, tAstro);
+                        exSh = getSunrise(loc, tAstro);
+                        exAr = getAssr(loc, exdecNext, conf.mathhab);
+                        exMg = getSunset(loc, tAstro);
+                        break;
+                    }
+                }
+
+                /* Skip the days which surely are not good (see GoodDayIndex) */
+                if (i == 0) {
+                    int first = GoodDayIndex.getFirstCandidate(conf.ephemeris,
+                            julianDay, loc.degreeLat, conf.fajrAng, conf.ishaaAng, lastDay);
+                    if (first <= lastDay)
+                        i = first - 1;
+                }
             }
 
-            if (conf.ishaaInv != 0) {
-                if (tempPrayer[4] != 99)
-                    tempPrayer[5] = tempPrayer[4] + (conf.ishaaInv / 60.0);
-                else tempPrayer[5] = 99;
+            switch (conf.extreme) {
+                case GOOD_ALL:
+                    tempPrayer[0] = minus(exZu, exFj);
+                    tempPrayer[1] = exSh;
+                    tempPrayer[2] = exZu;
+                    tempPrayer[3] = plus(exZu, exAr);
+                    tempPrayer[4] = exMg;
+                    tempPrayer[5] = plus(exZu, exIs);
+                    for (i = 0; i < 6; i++)
+                        extreme |= 1 << i;
+                    break;
+                case GOOD_INVALID:
+                    if (tempPrayer[0] == 99) {
+                        tempPrayer[0] = minus(exZu, exFj);
+                        extreme |= 1 << 0;
+                    }
+                    if (tempPrayer[5] == 99) {
+                        tempPrayer[5] = plus(exZu, exIs);
+                        extreme |= 1 << 5;
+                    }
+                    break;
+                case GOOD_INVALID_SAME:
+                    if ((tempPrayer[0] == 99) || (tempPrayer[5] == 99)) {
+                        tempPrayer[0] = minus(exZu, exFj);
+                        extreme |= 1 << 0;
+                        tempPrayer[5] = plus(exZu, exIs);
+                        extreme |= 1 << 5;
+                    }
+                    break;
+            }
+            return extreme;
+        }
+    }
+
+    /* Portion of the night or the day (SEVEN_NIGHT_*, SEVEN_DAY_*, and HALF_*) */
+    private static final class Portion extends ExtremeHandler {
+        Portion(boolean always) {
+            super(always, FAJR_ISHAA, !always);
+        }
+
+        @Override
+        int apply(CompiledLocation loc, CompiledMethod conf, int lastDay, double julianDay,
+                  double zu, double dec, Astro astroCache, Scratch work) {
+            final double[] tempPrayer = work.tempPrayer;
+            double portion = 0;
+            int extreme = 0;
+
+            /* FIXIT: For clarity, we may need to move the HALF_* methods
+             * into their own separate case statement. */
+            switch (conf.extreme) {
+                case SEVEN_NIGHT_ALWAYS:
+                case SEVEN_NIGHT_INVALID:
+                    portion = (24 - (tempPrayer[4] - tempPrayer[1])) * (1 / 7.0);
+                    break;
+                case SEVEN_DAY_ALWAYS:
+                case SEVEN_DAY_INVALID:
+                    portion = (tempPrayer[4] - tempPrayer[1]) * (1 / 7.0);
+                    break;
+                case HALF_ALWAYS:
+                case HALF_INVALID:
+                    portion = (24 - tempPrayer[4] - tempPrayer[1]) * (1 / 2.0);
+                    break;
             }
+            /* No day or night to divide */
+            if (tempPrayer[1] == 99 || tempPrayer[4] == 99)
+                portion = 99;
+
+
+            if (!always) {
+                if (tempPrayer[0] == 99) {
+                    if (conf.extreme == ExtremeMethod.HALF_INVALID)
+                        tempPrayer[0] = minus(portion, conf.fajrInv / 60.0);
+                    else tempPrayer[0] = minus(tempPrayer[1], portion);
+                    extreme |= 1 << 0;
+                }
+                if (tempPrayer[5] == 99) {
+                    if (conf.extreme == ExtremeMethod.HALF_INVALID)
+                        tempPrayer[5] = plus(portion, conf.ishaaInv / 60.0);
+                    else tempPrayer[5] = plus(tempPrayer[4], portion);
+                    extreme |= 1 << 5;
+                }
+            } else { /* for the always methods */
+
+                if (conf.extreme == ExtremeMethod.HALF_ALWAYS) {
+                    tempPrayer[0] = minus(portion, conf.fajrInv / 60.0);
+                    tempPrayer[5] = plus(portion, conf.ishaaInv / 60.0);
+                } else {
+                    tempPrayer[0] = minus(tempPrayer[1], portion);
+                    tempPrayer[5] = plus(tempPrayer[4], portion);
+                }
+                extreme |= 1 << 0;
+                extreme |= 1 << 5;
+            }
+            return extreme;
         }
+    }
 
-        /* Final Step: Fill the Prayer array by doing decimal degree to
-         * Prayer structure conversion */
-        if (type == TimeType.IMSAAK || type == TimeType.NEXTFAJR)
-            base6hm(tempPrayer[0], loc, conf, pt[0], type);
-        else {
-            for (i = 0; i < 6; i++)
-                base6hm(tempPrayer[i], loc, conf, pt[i], TimeType.values()[i]);
+    private static final class MinAlways extends ExtremeHandler {
+        MinAlways() {
+            super(true, FAJR_ISHAA, false);
+        }
+
+        @Override
+        int apply(CompiledLocation loc, CompiledMethod conf, int lastDay, double julianDay,
+                  double zu, double dec, Astro astroCache, Scratch work) {
+            final double[] tempPrayer = work.tempPrayer;
+
+            /* Do nothing here because this is implemented through fajrInv and
+             * ishaaInv structure members */
+            tempPrayer[0] = tempPrayer[1];
+            tempPrayer[5] = tempPrayer[4];
+            return 1 << 0 | 1 << 5;
         }
     }
 
-    private static void base6hm(double bs, Location loc, Method conf,
-                                PrayerTime pt, TimeType type) {
-        double min, sec;
+    private static final class MinInvalid extends ExtremeHandler {
+        MinInvalid() {
+            super(false, FAJR_ISHAA, true);
+        }
+
+        @Override
+        int apply(CompiledLocation loc, CompiledMethod conf, int lastDay, double julianDay,
+                  double zu, double dec, Astro astroCache, Scratch work) {
+            final double[] tempPrayer = work.tempPrayer;
+            int exinterval, extreme = 0;
 
-        /* Set to 99 and return if prayer is invalid */
-        if (bs == 99) {
-            pt.hour = 99;
-            pt.minute = 99;
-            pt.second = 0;
-            return;
+            if (tempPrayer[0] == 99) {
+                exinterval = (int) (conf.fajrInv / 60.0);
+                tempPrayer[0] = minus(tempPrayer[1], exinterval);
+                extreme |= 1 << 0;
+            }
+            if (tempPrayer[5] == 99) {
+                exinterval = (int) (conf.ishaaInv / 60.0);
+                tempPrayer[5] = plus(tempPrayer[4], exinterval);
+                extreme |= 1 << 5;
+            }
+            return extreme;
         }
+    }
 
-        /* Add offsets */
+    /**
+     * @return a + b, or 99 (invalid) if any of them is 99, so that an invalid time never turns
+     * into a valid-looking one
+     */
+    private static double plus(double a, double b) {
+        return a == 99 || b == 99 ? 99 : a + b;
+    }
+
+    /**
+     * @return a - b, or 99 (invalid) if any of them is 99
+     */
+    private static double minus(double a, double b) {
+        return a == 99 || b == 99 ? 99 : a - b;
+    }
+
+    /**
+     * Converts a Base-10 time of {@link #getPrayerTimesByDay} to the second of day, after
+     * applying the offsets, rounding, and daylight saving time.
+     *
+     * @return second of day, or {@link PrayerTime#INVALID} if the time is invalid
+     */
+    private static int base6hm(double bs, CompiledLocation loc, CompiledMethod conf,
+                               TimeType type) {
+        return base6hm(bs, loc.dst, conf, type);
+    }
+
+    /**
+     * Same as {@link #base6hm(double, CompiledLocation, CompiledMethod, TimeType)}, but with the
+     * daylight saving time given instead of the one of the location
+     */
+    static int base6hm(double bs, double dst, CompiledMethod conf, TimeType type) {
+        double offset = 0;
         if (conf.offset == 1) {
             if (type == TimeType.IMSAAK || type == TimeType.NEXTFAJR)
-                bs += (conf.offList[0] / 60.0);
-            else bs += (conf.offList[type.ordinal()] / 60.0);
+                offset = conf.offList[0];
+            else offset = conf.offList[type.ordinal()];
         }
+        return base6hm(bs, dst, conf.round, type, offset);
+    }
+
+    /**
+     * Same as {@link #base6hm(double, CompiledLocation, CompiledMethod, TimeType)}, but with the
+     * offset in minutes given instead of the one of "conf"
+     */
+    private static int base6hm(double bs, CompiledLocation loc, CompiledMethod conf,
+                               TimeType type, double offset) {
+        return base6hm(bs, loc.dst, conf.round, type, offset);
+    }
+
+    private static int base6hm(double bs, double dst, Rounding round, TimeType type,
+                               double offset) {
+        long sec;
+
+        /* Return if prayer is invalid */
+        if (bs == 99)
+            return PrayerTime.INVALID;
+
+        /* Add offsets */
+        bs += (offset / 60.0);
 
         /* Fix after minus offsets before midnight */
         if (bs < 0) {
@@ -498,18 +996,36 @@ class PrayerModule {
                 bs = 24 + bs;
         }
 
+        sec = roundSeconds(bs, round, type);
+
+        /* Add daylight saving time and fix after midnight times */
+        sec += Math.round(dst * 3600);
+        if (sec >= 24 * 3600)
+            sec = sec % (24 * 3600);
+
+        return (int) sec;
+    }
+
+    /**
+     * Rounds the Base-10 time "bs" (after the offset) as {@link #base6hm} does.
+     *
+     * @return seconds since the midnight, negative or more than a day if "bs" is out of 0-24
+     */
+    private static long roundSeconds(double bs, Rounding round, TimeType type) {
+        double min, sec;
+
         min = (bs - floor(bs)) * 60;
         sec = (min - floor(min)) * 60;
 
         /* Add rounding minutes */
-        if (conf.round == Rounding.NORMAL) {
+        if (round == Rounding.NORMAL) {
             if (sec >= DEF_ROUND_SEC)
                 bs += 1 / 60.0;
         /* compute again */
             min = (bs - floor(bs)) * 60;
             sec = 0;
 
-        } else if (conf.round == Rounding.SPECIAL || conf.round == Rounding.AGGRESSIVE) {
+        } else if (round == Rounding.SPECIAL || round == Rounding.AGGRESSIVE) {
             switch (type) {
                 case FAJR:
                 case ZUHR:
@@ -518,12 +1034,12 @@ class PrayerModule {
                 case ISHAA:
                 case NEXTFAJR:
 
-                    if (conf.round == Rounding.SPECIAL) {
+                    if (round == Rounding.SPECIAL) {
                         if (sec >= DEF_ROUND_SEC) {
                             bs += 1 / 60.0;
                             min = (bs - floor(bs)) * 60;
                         }
-                    } else if (conf.round == Rounding.AGGRESSIVE) {
+                    } else if (round == Rounding.AGGRESSIVE) {
                         if (sec >= AGGRESSIVE_ROUND_SEC) {
                             bs += 1 / 60.0;
                             min = (bs - floor(bs)) * 60;
@@ -539,62 +1055,163 @@ class PrayerModule {
             }
         }
 
-        /* Add daylight saving time and fix after midnight times */
-        bs += loc.dst;
-        if (bs >= 24)
-            bs = bs % 24;
+        return (long) floor(bs) * 3600 + (int) min * 60 + (int) sec;
+    }
 
-        pt.hour = (int) bs;
-        pt.minute = (int) min;
-        pt.second = (int) sec;
+    /**
+     * Same as {@link #getPrayerTimes(CompiledLocation, CompiledMethod, SDate, Astro, Scratch,
+     * int[], int)}, but the times are stored as seconds since 1970-01-01T00:00:00Z in
+     * seconds[off] until seconds[off + 5], or {@link PrayerTime#INVALID_EPOCH_SECOND}. The
+     * offsets and rounding are applied as in {@link #base6hm}, but the daylight saving time is
+     * not needed, and the times before or after the midnight keep their date instead of being
+     * wrapped. The ones farther than {@link #DAY_MARGIN} from the day are surely wrong (e.g.
+     * the rise and set formulae near the poles), so they are invalid too.
+     */
+    static int getEpochSeconds(CompiledLocation loc, CompiledMethod conf, SDate date,
+                               Astro astroCache, Scratch work, long[] seconds, int off) {
+        return getEpochSeconds(loc, conf, date, astroCache, work, ALL_TIMES, seconds, off);
+    }
+
+    /**
+     * Same as {@link #getEpochSeconds(CompiledLocation, CompiledMethod, SDate, Astro, Scratch,
+     * long[], int)}, but only the times in "mask" are calculated and stored, see
+     * {@link #getPrayerTimes(CompiledLocation, CompiledMethod, SDate, Astro, Scratch, int, int[],
+     * int)}
+     */
+    static int getEpochSeconds(CompiledLocation loc, CompiledMethod conf, SDate date,
+                               Astro astroCache, Scratch work, int mask, long[] seconds,
+                               int off) {
+        int extreme = getPrayerTimesByDay(loc, conf, getDayofYear(date.year, 12, 31),
+                getDayofYear(date.year, date.month, date.day), getJulianDay(date, loc.gmtDiff),
+                astroCache, work, mask);
+        long midnight = getEpochMidnight(date, loc.gmtDiff);
+        for (int i = 0; i < 6; i++) {
+            if ((mask & 1 << i) == 0)
+                continue;
+            double bs = work.tempPrayer[i];
+            long t = PrayerTime.INVALID_EPOCH_SECOND;
+            if (bs != 99) {
+                if (conf.offset == 1)
+                    bs += conf.offList[i] / 60.0;
+                long s = roundSeconds(bs, conf.round, TIME_TYPES[i]);
+                if (isWithinDay(s))
+                    t = midnight + s;
+            }
+            seconds[off + i] = t;
+        }
+        return extreme;
     }
 
-    static PrayerTime getImsaak(Location loc, Method conf, SDate date) {
+    /**
+     * Same as {@link #getEpochSeconds}, but the exact times are stored, before the offsets and
+     * rounding, or NaN if invalid
+     */
+    static int getRawEpochSeconds(CompiledLocation loc, CompiledMethod conf, SDate date,
+                                  Astro astroCache, Scratch work, double[] seconds, int off) {
+        int extreme = getPrayerTimesByDay(loc, conf, getDayofYear(date.year, 12, 31),
+                getDayofYear(date.year, date.month, date.day), getJulianDay(date, loc.gmtDiff),
+                astroCache, work);
+        long midnight = getEpochMidnight(date, loc.gmtDiff);
+        for (int i = 0; i < 6; i++) {
+            double bs = work.tempPrayer[i];
+            seconds[off + i] = bs != 99 && isWithinDay(bs * 3600) ? midnight + bs * 3600 :
+                    Double.NaN;
+        }
+        return extreme;
+    }
 
-        Method tmpConf;
-        final PrayerTime[] temp = new PrayerTime[6];
-        for (int i = 0; i < temp.length; ++i)
-            temp[i] = new PrayerTime();
+    /**
+     * @param seconds seconds from the midnight starting the date
+     * @return whether a time of the date may be there, see {@link #DAY_MARGIN}
+     */
+    private static boolean isWithinDay(double seconds) {
+        return seconds >= -DAY_MARGIN && seconds < 86400 + DAY_MARGIN;
+    }
 
-        tmpConf = new Method(conf);
+    /**
+     * @return seconds since 1970-01-01T00:00:00Z of the midnight starting the date at the GMT
+     * difference, which is the origin of the Base-10 times of {@link #getPrayerTimesByDay}
+     */
+    static long getEpochMidnight(SDate date, double gmtDiff) {
+        return Timetable.toEpochDay(date.year, date.month, date.day) * 86400L -
+                Math.round(gmtDiff * 3600);
+    }
 
-        if (conf.fajrInv != 0) {
-            if (conf.imsaakInv == 0)
-                tmpConf.fajrInv += DEF_IMSAAK_INTERVAL;
-            else tmpConf.fajrInv += conf.imsaakInv;
+    static PrayerTime getImsaak(CompiledLocation loc, CompiledMethod conf, SDate date) {
+        final Scratch work = getScratch();
+        int[] times = new int[1];
+        int extreme = getImsaakByDay(loc, conf, getDayInfo(date, loc.gmtDiff), Double.NaN, 0,
+                work.astroCache, work, times, 0);
+        return new PrayerTime(times[0], extreme != 0);
+    }
 
-        } else if (conf.imsaakInv != 0) {
+    /**
+     * Computes Imsaak of the day into times[off]. Unlike the original C code, no method is
+     * modified: the changed angle or interval is in {@link CompiledMethod#imsaak}, and the Imsaak
+     * interval is passed to base6hm as the offset.
+     *
+     * @param fajr        Base-10 Fajr of the same day computed with "conf", or NaN if not known;
+     *                    if known, "work" must still hold the rest of that computation
+     * @param fajrExtreme extreme status of "fajr" (0 or 1)
+     * @return extreme status of Imsaak (0 or 1)
+     */
+    private static int getImsaakByDay(CompiledLocation loc, CompiledMethod conf, DayInfo di,
+                                      double fajr, int fajrExtreme, Astro astroCache,
+                                      Scratch work, int[] times, int off) {
+        double offset = conf.offset == 1 ? conf.offList[0] : 0;
+        double imsaak, fj;
+        int extreme;
+
+        if (conf.imsaak == null) {
         /* use an inv even if al-Fajr is computed (Indonesia?) */
-            tmpConf.offList[0] += (conf.imsaakInv * -1);
-            tmpConf.offset = 1;
+            offset = conf.offList[0] + (conf.imsaakInv * -1);
+            /* Only the offset differs, so it's the same as Fajr */
+            if (Double.isNaN(fajr)) {
+                fajrExtreme = getPrayerTimesByDay(loc, conf, di.lastDay, di.dayOfYear,
+                        di.julianDay, astroCache, work) & 1;
+                fajr = work.tempPrayer[0];
+            }
+            extreme = fajrExtreme;
+            imsaak = fajr;
+
+        } else if (conf.fajrInv == 0 && !Double.isNaN(fajr) && !work.invalid &&
+                (conf.handler == null || !conf.handler.always) &&
+                conf.method != StandardMethod.MOONSIGHTING_COMMITTEE &&
+                ((fj = getFajIsh(loc, work.dec, conf.imsaak.sinFajr)) != 99 ||
+                        conf.handler == null)) {
+            /* All times of the day were calculated normally and the Imsaak angle doesn't
+             * trigger an extreme method, so only Fajr differs */
+            imsaak = fj == 99 ? 99 : work.tempPrayer[2] - fj;
+            extreme = 0;
+
         } else {
-            tmpConf.fajrAng += conf.imsaakAng;
+            extreme = getPrayerTimesByDay(loc, conf.imsaak, di.lastDay, di.dayOfYear,
+                    di.julianDay, astroCache, work) & 1;
+            imsaak = work.tempPrayer[0];
         }
 
-        DayInfo di = getDayInfo(date, loc.gmtDiff);
-        getPrayerTimesByDay(loc, tmpConf, di.lastDay, di.dayOfYear, di.julianDay, temp, TimeType.IMSAAK);
-
         /* FIXIT: We probably need to check whether it's possible to compute
          * Imsaak normally for some extreme methods first */
         /* In case of an extreme Fajr time calculation use intervals for Imsaak and
          * compute again */
-        if (temp[0].isExtreme != 0) {
-            tmpConf = new Method(conf);
-            if (conf.imsaakInv == 0) {
-                tmpConf.offList[0] -= DEF_IMSAAK_INTERVAL;
-                tmpConf.offset = 1;
-            } else {
-                tmpConf.offList[0] -= conf.imsaakInv;
-                tmpConf.offset = 1;
+        if (extreme != 0) {
+            if (conf.imsaakInv == 0)
+                offset = conf.offList[0] - DEF_IMSAAK_INTERVAL;
+            else offset = conf.offList[0] - conf.imsaakInv;
+            if (Double.isNaN(fajr)) {
+                fajrExtreme = getPrayerTimesByDay(loc, conf, di.lastDay, di.dayOfYear,
+                        di.julianDay, astroCache, work) & 1;
+                fajr = work.tempPrayer[0];
             }
-            getPrayerTimesByDay(loc, tmpConf, di.lastDay, di.dayOfYear, di.julianDay, temp, TimeType.IMSAAK);
+            extreme = fajrExtreme;
+            imsaak = fajr;
         }
 
-        return temp[0];
-
+        times[off] = base6hm(imsaak, loc, conf, TimeType.IMSAAK, offset);
+        return extreme;
     }
 
-    static PrayerTime getNextDayImsaak(Location loc, Method conf, SDate date) {
+    static PrayerTime getNextDayImsaak(CompiledLocation loc, CompiledMethod conf, SDate date) {
         /* Copy the date structure and increment for next day.*/
         SDate tempd = new SDate(date);
         tempd.day++;
@@ -603,23 +1220,68 @@ class PrayerModule {
 
     }
 
-    static PrayerTime getNextDayFajr(Location loc, Method conf, SDate date) {
-        PrayerTime[] temp = new PrayerTime[6];
-        for (int i = 0; i < temp.length; ++i)
-            temp[i] = new PrayerTime();
-
+    /**
+     * Computes the six times of the day into times[off] until times[off + 5] like
+     * {@link #getPrayerTimes(CompiledLocation, CompiledMethod, SDate, Astro, Scratch, int[],
+     * int)},
+     * followed by Imsaak, next day's Fajr, and next day's Imsaak, with the same results as
+     * {@link #getImsaak}, {@link #getNextDayFajr}, and {@link #getNextDayImsaak}. The days share
+     * the 3-day window, and Fajr is reused for Imsaak when only the offset differs.
+     *
+     * @return extreme status, bit i for times[off + i]
+     */
+    static int getDayBundle(CompiledLocation loc, CompiledMethod conf, SDate date,
+                            Astro astroCache, Scratch work, int[] times, int off) {
+        int i, extreme, nextExtreme;
+        double fajr;
         DayInfo di = getDayInfo(date, loc.gmtDiff);
-        getPrayerTimesByDay(loc, conf, di.lastDay, di.dayOfYear + 1, di.julianDay + 1, temp, TimeType.NEXTFAJR);
 
-        return temp[0];
+        extreme = getPrayerTimesByDay(loc, conf, di.lastDay, di.dayOfYear, di.julianDay,
+                astroCache, work);
+        fajr = work.tempPrayer[0];
+        for (i = 0; i < 6; i++)
+            times[off + i] = base6hm(work.tempPrayer[i], loc, conf, TIME_TYPES[i]);
+        extreme |= getImsaakByDay(loc, conf, di, fajr, extreme & 1, astroCache, work, times,
+                off + 6) << 6;
+
+        /* Next day, see getNextDayFajr */
+        nextExtreme = getPrayerTimesByDay(loc, conf, di.lastDay, di.dayOfYear + 1,
+                di.julianDay + 1, astroCache, work) & 1;
+        fajr = work.tempPrayer[0];
+        times[off + 7] = base6hm(fajr, loc, conf, TimeType.NEXTFAJR);
+        extreme |= nextExtreme << 7;
+
+        /* See getNextDayImsaak, its Julian day may differ from the one above in the last bit */
+        SDate tempd = new SDate(date);
+        tempd.day++;
+        DayInfo next = getDayInfo(tempd, loc.gmtDiff);
+        if (next.julianDay != di.julianDay + 1)
+            fajr = Double.NaN;
+        extreme |= getImsaakByDay(loc, conf, next, fajr, nextExtreme, astroCache, work, times,
+                off + 8) << 8;
+
+        return extreme;
     }
 
-    private static double getFajIsh(double lat, double dec, double Ang) {
-        double rlat = DEG_TO_RAD(lat);
+    static PrayerTime getNextDayFajr(CompiledLocation loc, CompiledMethod conf, SDate date) {
+        final Scratch work = getScratch();
+        int extreme;
+
+        DayInfo di = getDayInfo(date, loc.gmtDiff);
+        extreme = getPrayerTimesByDay(loc, conf, di.lastDay, di.dayOfYear + 1, di.julianDay + 1,
+                work.astroCache, work);
 
+        return new PrayerTime(base6hm(work.tempPrayer[0], loc, conf, TimeType.NEXTFAJR),
+                (extreme & 1) != 0);
+    }
+
+    /**
+     * @param sinAng sine of the negated angle, see {@link CompiledMethod#sinFajr}
+     */
+    private static double getFajIsh(CompiledLocation loc, double dec, double sinAng) {
         /* Compute the hour angle */
-        double part1 = sin(DEG_TO_RAD(-Ang)) - (sin(rlat) * sin(dec));
-        double part2 = cos(rlat) * cos(dec);
+        double part1 = sinAng - (loc.sinLat * sin(dec));
+        double part2 = loc.cosLat * cos(dec);
         double part3 = part1 / part2;
 
         if (part3 < -INVALID_TRIGGER || part3 > INVALID_TRIGGER)
@@ -632,16 +1294,15 @@ class PrayerModule {
         return getTransit(lon, astro);
     }
 
-    private static double getAssr(double lat, double dec, Mathhab mathhab) {
+    private static double getAssr(CompiledLocation loc, double dec, Mathhab mathhab) {
         double part1, part2, part3, part4;
-        double rlat = DEG_TO_RAD(lat);
 
-        part1 = mathhab.assrRatio() + tan(abs(rlat - dec));
+        part1 = mathhab.assrRatio() + tan(abs(loc.rLat - dec));
         part2 = atan(1.0 / part1);
 
         /* Compute the hour angle */
-        part3 = sin(part2) - (sin(rlat) * sin(dec));
-        part4 = (part3 / (cos(rlat) * cos(dec)));
+        part3 = sin(part2) - (loc.sinLat * sin(dec));
+        part4 = (part3 / (loc.cosLat * cos(dec)));
 
         if (part4 < -INVALID_TRIGGER || part4 > INVALID_TRIGGER) {
             return 99;
@@ -676,8 +1337,8 @@ class PrayerModule {
             A = B + (A - B) / 91.0 * (DYY - 275);
         }
 
-        adjustedFajr = sunrise - (floor(A) / 60.0);
-        if (adjustedFajr > fajr || fajr == 99) {
+        adjustedFajr = minus(sunrise, floor(A) / 60.0);
+        if (adjustedFajr != 99 && (adjustedFajr > fajr || fajr == 99)) {
             fajr = adjustedFajr;
         }
 
@@ -710,8 +1371,8 @@ class PrayerModule {
             A = B + (A - B) / 91.0 * (DYY - 275);
         }
 
-        adjustedIsha = sunset + (ceil(A) / 60.0);
-        if (adjustedIsha < isha || isha == 99) {
+        adjustedIsha = plus(sunset, ceil(A) / 60.0);
+        if (adjustedIsha != 99 && (adjustedIsha < isha || isha == 99)) {
             isha = adjustedIsha;
         }
 
@@ -12,6 +12,16 @@ import java.text.DateFormatSymbols;
  */
 @SuppressWarnings("WeakerAccess")
 public class PrayerTime implements Formatter.Mapper, Comparable<PrayerTime> {
+    /**
+     * Second of day of an invalid time, see {@link #getSecondOfDay()}.
+     */
+    public static final int INVALID = -1;
+
+    /**
+     * Epoch second of an invalid time, see {@link Prayer#getEpochSeconds(long[], int)}.
+     */
+    public static final long INVALID_EPOCH_SECOND = Long.MIN_VALUE;
+
     int hour;
     int minute;
     int second;
@@ -25,7 +35,19 @@ public class PrayerTime implements Formatter.Mapper, Comparable<PrayerTime> {
      */
     byte isExtreme;
 
-    PrayerTime() {
+    /**
+     * @param secondOfDay see {@link #getSecondOfDay()}
+     */
+    PrayerTime(int secondOfDay, boolean extreme) {
+        if (secondOfDay == INVALID) {
+            this.hour = 99;
+            this.minute = 99;
+        } else {
+            this.hour = secondOfDay / 3600;
+            this.minute = secondOfDay / 60 % 60;
+            this.second = secondOfDay % 60;
+        }
+        this.isExtreme = (byte) (extreme ? 1 : 0);
     }
 
     public int getHour() {
@@ -40,6 +62,16 @@ public class PrayerTime implements Formatter.Mapper, Comparable<PrayerTime> {
         return second;
     }
 
+    /**
+     * @return hour * 3600 + minute * 60 + second, or {@link #INVALID} if the time cannot be
+     * calculated (hour and minute are 99)
+     */
+    public int getSecondOfDay() {
+        if (hour == 99)
+            return INVALID;
+        return hour * 3600 + minute * 60 + second;
+    }
+
     /**
      * Whether this particular prayer time has been calculated
      * through extreme latitude methods and NOT by
@@ -0,0 +1,370 @@
+/* Copyright (c) 2017, Fikrul Arif
+ * (under LGPL license - see COPYING file)
+ */
+package org.arabeyes.itl.prayertime;
+
+import org.arabeyes.itl.prayertime.PrayerModule.CompiledLocation;
+import org.arabeyes.itl.prayertime.PrayerModule.CompiledMethod;
+import org.arabeyes.itl.prayertime.PrayerModule.Location;
+import org.arabeyes.itl.prayertime.PrayerModule.Scratch;
+import org.arabeyes.itl.prayertime.PrayerModule.SDate;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Prayer times of nearby locations with a method, cached by a grid of the location. Nearby
+ * locations rarely have exactly the same coordinates, so the location is quantised into cells
+ * and the unrounded times are cached for the center of each cell. A cached time is only used if
+ * it is expected to give the same result as {@link PrayerCalculator} with the same settings:
+ * <ul>
+ * <li>The difference between the times of the location and of the center is estimated from the
+ * distance, through the first derivatives of the hour angle formula. The terms left out (the
+ * change of the derivatives within the cell, the interpolation of the sun's values, and the
+ * parallax) are covered by a factor of 1.5 and by requiring the hour angles of the formulas to
+ * agree with the times within 2 degrees. Both are chosen by measurement rather than derived
+ * from the sizes of those terms: no difference was found in millions of random locations and
+ * dates, but it is not a proof.</li>
+ * <li>A cached time is only used if the whole estimated range is rounded (see {@link Rounding})
+ * to the same second of day. Otherwise, as well as for the invalid times, the ones through
+ * extreme latitude methods, and the ones of Moonsighting Committee, the times are calculated for
+ * the location.</li>
+ * </ul>
+ * The cells are a few hundred meters wide with rounding to minutes, narrowing with the latitude
+ * like the sensitivity of the times to the latitude, so a cached time is used unless it is
+ * within a second or so from a rounding boundary. With {@link Rounding#NONE} the cells are only a
+ * few meters wide, so distinct locations of a city rarely share a cell and a high hit rate over
+ * them can't be reached; the cache then only helps when the same coordinates are looked up
+ * again. The least
+ * recently used entries are dropped when the size is exceeded.
+ * <p>
+ * Instances are thread-safe. The entries are calculated outside the lock, so the same entry may
+ * be calculated by multiple threads at the same time.
+ */
+@SuppressWarnings("WeakerAccess")
+public final class PrayerTimeCache {
+
+    /* Seconds of time by a degree of longitude or hour angle */
+    private static final double SECONDS_PER_DEGREE = 240;
+    /* Factor of the estimate for the terms not included, chosen by measurement */
+    private static final double SAFETY = 1.5;
+    /* Largest time difference used, keeping the hour angle within a degree */
+    private static final double MAX_ERROR = SECONDS_PER_DEGREE;
+    /* Largest difference of the hour angle from the center, by at most MAX_ERROR */
+    private static final double HOUR_ANGLE_MARGIN = 1;
+    /* Smallest hour angle from Zuhr, near the poles where the sun barely rises or sets */
+    private static final double MIN_HOUR_ANGLE = 10;
+    /* Largest difference between the hour angles of the formulas and of the times, including
+     * the interpolation, refraction, and the offsets of Moonsighting Committee. Chosen by
+     * measurement, the estimate is unreliable beyond it near the poles. */
+    private static final double MAX_CORRECTION = 2;
+    private static final double COS_MAX_DEC = Math.cos(Math.toRadians(23.5));
+    /* Largest horizontal parallax of the sun in radians, see AstroModule.computeTopAstro */
+    private static final double MAX_PARALLAX = Math.toRadians(8.794 / 3600 / 0.983);
+    private static final double MAX_LAT = 89;   /* Above it the times are not cached */
+    private static final double HEIGHT_STEP = 100;
+    private static final int FAJR_ISHAA = 1 << 0 | 1 << 5;
+
+    private final CompiledMethod method;
+    private final double step;          /* Of longitude and Mercator latitude in degrees */
+    private final int fajrSource;       /* Time whose hour angle moves Fajr */
+    private final int ishaaSource;
+    private final int uncached;         /* Times never cached */
+    private final LinkedHashMap<Key, CenterTimes> entries;
+    private long hits;
+    private long misses;
+
+    /**
+     * @param method  calculation method, later changes of it don't affect this object; its
+     *                rounding determines the size of the cells
+     * @param maxSize maximum number of entries (locations and dates)
+     * @throws IllegalArgumentException if "maxSize" is not positive
+     */
+    public PrayerTimeCache(Method method, final int maxSize) {
+        if (maxSize <= 0)
+            throw new IllegalArgumentException("Non-positive size: " + maxSize);
+
+        this.method = method.compile();
+        /* The difference from the center is at most 1/120 of the rounding unit by longitude, and
+         * about the same by latitude */
+        double tolerance = (this.method.round == Rounding.NONE ? 1 : 60) / 120.0;
+        this.step = 2 * tolerance / SECONDS_PER_DEGREE;
+        this.fajrSource = this.method.intervals && this.method.fajrInv != 0 ? 1 : 0;
+        this.ishaaSource = this.method.intervals && this.method.ishaaInv != 0 ? 4 : 5;
+        this.uncached = this.method.method == StandardMethod.MOONSIGHTING_COMMITTEE ?
+                FAJR_ISHAA : 0;
+        this.entries = new LinkedHashMap<Key, CenterTimes>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, CenterTimes> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    /**
+     * Calculate prayer times and Shurooq (sunrise) of the location and the date, see
+     * {@link PrayerCalculator#getPrayerTimeSeconds(long, double, double, int[], int)}.
+     *
+     * @param lat      latitude in decimal degrees
+     * @param lon      longitude in decimal degrees
+     * @param seaLevel height (altitude/elevation) above sea level in meters
+     * @param epochDay days since 1970-01-01
+     * @param gmtDiff  GMT difference at regular time in hours
+     * @param dst      daylight saving time in hours (0 if not used)
+     * @return extreme status, bit i is set if times[offset + i] is calculated through extreme
+     * latitude methods
+     */
+    public int getPrayerTimeSeconds(double lat, double lon, double seaLevel, long epochDay,
+                                    double gmtDiff, double dst, int[] times, int offset) {
+        if (epochDay < Integer.MIN_VALUE / 2 || epochDay > Integer.MAX_VALUE / 2)
+            throw new IllegalArgumentException("Epoch day out of range: " + epochDay);
+
+        Scratch work = PrayerModule.getScratch();
+        SDate date = work.date;
+        Timetable.fromEpochDay((int) epochDay, date);
+        int remaining = PrayerModule.ALL_TIMES;
+        boolean found = false;
+        if (Math.abs(lat) <= MAX_LAT) {
+            Key key = new Key(epochDay, gmtDiff, lat, lon, seaLevel, step);
+            CenterTimes entry;
+            synchronized (this) {
+                entry = entries.get(key);
+            }
+            found = entry != null;
+            if (!found) {
+                entry = new CenterTimes(key, step, gmtDiff, method, date, work);
+                synchronized (this) {
+                    entries.put(key, entry);
+                }
+            }
+            remaining = getCachedTimes(entry, lat, lon, seaLevel, dst, times, offset);
+        }
+
+        int extreme = 0;
+        if (remaining != 0) {
+            Location loc = new Location();
+            loc.degreeLat = lat;
+            loc.degreeLong = lon;
+            loc.seaLevel = seaLevel;
+            loc.gmtDiff = gmtDiff;
+            loc.dst = dst;
+            extreme = PrayerModule.getPrayerTimes(new CompiledLocation(loc), method, date,
+                    work.astroCache, work, remaining, times, offset);
+        }
+        synchronized (this) {
+            if (found && remaining == 0)
+                ++hits;
+            else ++misses;
+        }
+        return extreme;
+    }
+
+    /**
+     * @return time of Fajr, Shurooq, Zuhr, Assr, Maghrib, Ishaa respectively
+     * @see #getPrayerTimeSeconds(double, double, double, long, double, double, int[], int)
+     */
+    public PrayerTime[] getPrayerTimes(double lat, double lon, double seaLevel, long epochDay,
+                                       double gmtDiff, double dst) {
+        int[] times = new int[6];
+        int extreme = getPrayerTimeSeconds(lat, lon, seaLevel, epochDay, gmtDiff, dst, times, 0);
+        PrayerTime[] result = new PrayerTime[6];
+        for (int i = 0; i < 6; ++i)
+            result[i] = new PrayerTime(times[i], (extreme & (1 << i)) != 0);
+        return result;
+    }
+
+    /**
+     * @return number of calls whose times are all taken from the cache
+     */
+    public synchronized long getHitCount() {
+        return hits;
+    }
+
+    /**
+     * @return number of calls calculating any time, because the cell is not cached yet, or some
+     * times can't be taken from it
+     */
+    public synchronized long getMissCount() {
+        return misses;
+    }
+
+    /**
+     * @return number of entries (cells and dates) kept
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Removes all entries, the statistics are kept.
+     */
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    /**
+     * Stores the times of the location which are rounded the same as the cached times of the
+     * center anywhere within the bounded difference.
+     *
+     * @return mask of the times not stored
+     */
+    private int getCachedTimes(CenterTimes entry, double lat, double lon, double seaLevel,
+                               double dst, int[] times, int offset) {
+        double[] hours = entry.hours;
+        int remaining = uncached;
+        /* The times which may be changed by the extreme latitude method when it applies */
+        int handled = method.handler != null ? method.handler.modifies : 0;
+        boolean above = lat > method.extremeLat;
+        if (entry.extreme != 0)
+            remaining |= handled;
+        if (above != entry.lat > method.extremeLat)
+            remaining |= handled | FAJR_ISHAA;
+
+        double dLat = Math.abs(lat - entry.lat);
+        double dLon = Math.abs(lon - entry.lon);
+        double cosLat = Math.cos(Math.toRadians(Math.max(Math.abs(lat), Math.abs(entry.lat))));
+        /* The topocentric correction moves the sun by at most this in degrees */
+        double parallax = Math.toDegrees(MAX_PARALLAX * (Math.abs(seaLevel - entry.seaLevel) /
+                AstroModule.EARTH_RADIUS + Math.toRadians(dLat + dLon)));
+        /* Zuhr only moves by the longitude, the others also by the hour angle */
+        double transit = SECONDS_PER_DEGREE * (dLon + parallax / COS_MAX_DEC);
+        double[] errors = new double[6];
+        for (int i = 0; i < 6; ++i) {
+            int source = i == 0 ? fajrSource : i == 5 ? ishaaSource : i;
+            if (i == 2) {
+                errors[i] = SAFETY * transit;
+            } else if (above && handled == 0 && (i == 0 || i == 5) && source == i) {
+                /* Invalid at both, without extreme latitude method */
+                errors[i] = 0;
+            } else if (hours[source] == 99 || hours[2] == 99) {
+                errors[i] = Double.POSITIVE_INFINITY;
+            } else {
+                /* Derivative of the hour angle by the latitude is at most
+                 * 1 / (cos(lat) cos(dec) sin(H)), twice for Assr whose altitude also moves */
+                double h = entry.hourAngles[source];
+                double sinH = Math.min(Math.sin(Math.toRadians(h - HOUR_ANGLE_MARGIN)),
+                        Math.sin(Math.toRadians(h + HOUR_ANGLE_MARGIN)));
+                /* The times are corrected from the hour angle, which is unreliable if the
+                 * correction is large */
+                double fromTimes = (hours[source] - hours[2]) * (source < 2 ? -15 : 15);
+                if (!(h >= MIN_HOUR_ANGLE && h <= 180 - MIN_HOUR_ANGLE) ||
+                        Math.abs(fromTimes - h) > MAX_CORRECTION) {
+                    errors[i] = Double.POSITIVE_INFINITY;
+                } else {
+                    errors[i] = SAFETY * (transit + SECONDS_PER_DEGREE *
+                            ((source == 3 ? 2 : 1) * dLat + parallax) /
+                            (cosLat * COS_MAX_DEC * sinH));
+                }
+            }
+            /* The time may be invalid, which may trigger the extreme latitude method */
+            if (!(errors[i] <= MAX_ERROR))
+                remaining |= 1 << i | handled;
+        }
+        if (remaining == PrayerModule.ALL_TIMES)
+            return remaining;
+
+        TimeType[] types = TimeType.values();
+        for (int i = 0; i < 6; ++i) {
+            if ((remaining & 1 << i) != 0)
+                continue;
+            double e = errors[i] / 3600;
+            int low = PrayerModule.base6hm(hours[i] - e, dst, method, types[i]);
+            int high = PrayerModule.base6hm(hours[i] + e, dst, method, types[i]);
+            if (low == high && (low != PrayerTime.INVALID || errors[i] == 0))
+                times[offset + i] = low;
+            else remaining |= 1 << i;
+        }
+        return remaining;
+    }
+
+    /**
+     * Cell of a location and a date
+     */
+    private static final class Key {
+        final long epochDay;
+        final double gmtDiff;
+        final int lat;    /* Index of the Mercator latitude */
+        final int lon;
+        final int height;
+
+        Key(long epochDay, double gmtDiff, double lat, double lon, double seaLevel, double step) {
+            this.epochDay = epochDay;
+            this.gmtDiff = gmtDiff;
+            /* The cells narrow by cos(lat) like the time differences widen */
+            this.lat = (int) Math.round(toMercator(lat) / step);
+            this.lon = (int) Math.round(lon / step);
+            this.height = (int) Math.round(seaLevel / HEIGHT_STEP);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+
+            Key key = (Key) o;
+            return epochDay == key.epochDay && lat == key.lat && lon == key.lon &&
+                    height == key.height && Double.compare(gmtDiff, key.gmtDiff) == 0;
+        }
+
+        @Override
+        public int hashCode() {
+            long bits = Double.doubleToLongBits(gmtDiff);
+            int result = (int) (epochDay ^ (epochDay >>> 32));
+            result = 31 * result + (int) (bits ^ (bits >>> 32));
+            result = 31 * result + lat;
+            result = 31 * result + lon;
+            result = 31 * result + height;
+            return result;
+        }
+    }
+
+    /**
+     * Times of the center of a cell, before the offsets, rounding, and daylight saving time
+     */
+    private static final class CenterTimes {
+        final double lat;
+        final double lon;
+        final double seaLevel;
+        final double[] hours = new double[6];
+        final double[] hourAngles = new double[6]; /* In degrees as of the formulas, or NaN */
+        final int extreme;
+
+        CenterTimes(Key key, double step, double gmtDiff, CompiledMethod method, SDate date,
+                    Scratch work) {
+            Location loc = new Location();
+            loc.degreeLat = fromMercator(key.lat * step);
+            loc.degreeLong = key.lon * step;
+            loc.seaLevel = key.height * HEIGHT_STEP;
+            loc.gmtDiff = gmtDiff;
+            this.lat = loc.degreeLat;
+            this.lon = loc.degreeLong;
+            this.seaLevel = loc.seaLevel;
+            CompiledLocation compiled = new CompiledLocation(loc);
+            this.extreme = PrayerModule.getRawPrayerTimes(compiled, method, date,
+                    work.astroCache, work, hours, 0);
+
+            double dec = work.dec;
+            double sunrise = Math.sin(Math.toRadians(AstroModule.CENTER_OF_SUN_ANGLE));
+            double assr = Math.atan(1 / (method.mathhab.assrRatio() +
+                    Math.tan(Math.abs(compiled.rLat - dec))));
+            hourAngles[0] = getHourAngle(compiled, dec, method.sinFajr);
+            hourAngles[1] = getHourAngle(compiled, dec, sunrise);
+            hourAngles[3] = getHourAngle(compiled, dec, Math.sin(assr));
+            hourAngles[4] = hourAngles[1];
+            hourAngles[5] = getHourAngle(compiled, dec, method.sinIshaa);
+        }
+
+        private static double getHourAngle(CompiledLocation loc, double dec, double sinAlt) {
+            double cosH = (sinAlt - loc.sinLat * Math.sin(dec)) / (loc.cosLat * Math.cos(dec));
+            return Math.abs(cosH) <= 1 ? Math.toDegrees(Math.acos(cosH)) : Double.NaN;
+        }
+    }
+
+    private static double toMercator(double lat) {
+        return Math.toDegrees(Math.log(Math.tan(Math.PI / 4 + Math.toRadians(lat) / 2)));
+    }
+
+    private static double fromMercator(double y) {
+        return Math.toDegrees(2 * Math.atan(Math.exp(Math.toRadians(y))) - Math.PI / 2);
+    }
+}
@@ -0,0 +1,133 @@
+/* Copyright (c) 2017, Fikrul Arif
+ * (under LGPL license - see COPYING file)
+ */
+package org.arabeyes.itl.prayertime;
+
+import org.arabeyes.itl.prayertime.PrayerModule.CompiledMethod;
+
+/**
+ * Prayer times and Shurooq (sunrise) of a location for consecutive days, as calculated before the
+ * offsets, rounding, and daylight saving time. Those are only applied by
+ * {@link #toTimetable(Method)}, which is very cheap compared to the calculation, so the same
+ * result can be rendered again with other offsets or rounding without recalculating the sun's
+ * positions.
+ * <p>
+ * Instances are immutable, see {@link Prayer#getRawTimetable(int)}.
+ */
+@SuppressWarnings("WeakerAccess")
+public final class RawTimetable {
+
+    private static final int TIMES_PER_DAY = 6;
+
+    private final int startYear;
+    private final int startMonth;
+    private final int startDay;
+    private final double[] hours; /* Base-10 hours at regular time, or 99 if invalid */
+    private final int[] extremes;
+    private final double[] dst;   /* Daylight saving time of each day in hours */
+
+    /**
+     * @param hours    hours[day * 6 + type] is the time as Base-10 hours, 99 if invalid
+     * @param extremes extremes[day] is the extreme status of the day, bit i for the i-th time
+     * @param dst      dst[day] is the daylight saving time of the day in hours
+     */
+    RawTimetable(int startYear, int startMonth, int startDay, double[] hours, int[] extremes,
+                 double[] dst) {
+        this.startYear = startYear;
+        this.startMonth = startMonth;
+        this.startDay = startDay;
+        this.hours = hours;
+        this.extremes = extremes;
+        this.dst = dst;
+    }
+
+    public int getStartYear() {
+        return startYear;
+    }
+
+    /**
+     * @return month of the first day (1-12)
+     */
+    public int getStartMonth() {
+        return startMonth;
+    }
+
+    public int getStartDay() {
+        return startDay;
+    }
+
+    /**
+     * @return number of days
+     */
+    public int getDays() {
+        return extremes.length;
+    }
+
+    /**
+     * @param day  index of the day, 0 for the first one
+     * @param type one of Fajr, Shurooq, Zuhr, Assr, Maghrib, Ishaa
+     * @return time in decimal hours at regular time (without daylight saving time), before the
+     * offsets and rounding, or NaN if invalid; may be out of 0-24
+     * @throws IndexOutOfBoundsException if the day or the type is out of range
+     */
+    public double getHours(int day, TimeType type) {
+        double h = hours[index(day, type)];
+        return h == 99 ? Double.NaN : h;
+    }
+
+    /**
+     * @see PrayerTime#isExtreme()
+     */
+    public boolean isExtreme(int day, TimeType type) {
+        index(day, type);
+        return (extremes[day] & (1 << type.ordinal())) != 0;
+    }
+
+    /**
+     * @return daylight saving time of the day in hours, as followed when calculated
+     */
+    public double getDst(int day) {
+        return dst[day];
+    }
+
+    /**
+     * Applies the offsets and rounding of the method, and the daylight saving time of each day.
+     * Other settings of the method are ignored, the ones used in the calculation are kept. The
+     * result is the same as {@link Prayer#getTimetable(int)} with those offsets and rounding.
+     */
+    public Timetable toTimetable(Method method) {
+        return toTimetable(method, dst);
+    }
+
+    /**
+     * Same as {@link #toTimetable(Method)}, but with the given daylight saving time instead of
+     * the one followed when calculated.
+     *
+     * @param dst dst[day] is the daylight saving time of the day in hours
+     * @throws IllegalArgumentException if the length of "dst" is not the number of days
+     */
+    public Timetable toTimetable(Method method, double[] dst) {
+        int days = extremes.length;
+        if (dst.length != days)
+            throw new IllegalArgumentException("Array length doesn't match");
+
+        CompiledMethod conf = method.compile();
+        TimeType[] types = TimeType.values();
+        int[] times = new int[hours.length];
+        for (int d = 0; d < days; ++d) {
+            for (int i = 0; i < TIMES_PER_DAY; ++i) {
+                int j = d * TIMES_PER_DAY + i;
+                times[j] = PrayerModule.base6hm(hours[j], dst[d], conf, types[i]);
+            }
+        }
+        return new Timetable(startYear, startMonth, startDay, times, extremes);
+    }
+
+    private int index(int day, TimeType type) {
+        if (day < 0 || day >= extremes.length)
+            throw new IndexOutOfBoundsException("Day: " + day + ", days: " + extremes.length);
+        if (type.ordinal() >= TIMES_PER_DAY)
+            throw new IndexOutOfBoundsException("Type: " + type);
+        return day * TIMES_PER_DAY + type.ordinal();
+    }
+}
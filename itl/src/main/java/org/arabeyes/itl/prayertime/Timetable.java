@@ -0,0 +1,177 @@
+/* Copyright (c) 2017, Fikrul Arif
+ * (under LGPL license - see COPYING file)
+ */
+package org.arabeyes.itl.prayertime;
+
+/**
+ * Prayer times and Shurooq (sunrise) of a location for consecutive days, stored as packed
+ * primitives instead of {@link PrayerTime} objects. If none of the times has seconds (e.g. any
+ * rounding other than {@link Rounding#NONE}), each time takes a short (minute of day), otherwise
+ * an int (second of day). The extreme status takes one bit for each time. {@link PrayerTime}
+ * objects are only created when requested.
+ * <p>
+ * Instances are immutable, see {@link Prayer#getTimetable(int)}.
+ */
+@SuppressWarnings("WeakerAccess")
+public final class Timetable {
+
+    private static final int TIMES_PER_DAY = 6;
+
+    private final int startYear;
+    private final int startMonth;
+    private final int startDay;
+    private final int startEpochDay;
+    private final int days;
+    private final short[] minutes; /* Minute of day, or -1 if invalid; null if "seconds" is used */
+    private final int[] seconds;   /* Second of day, or PrayerTime.INVALID */
+    private final long[] extremes; /* Bit (day * 6 + type) */
+
+    /**
+     * @param times    times[day * 6 + type] is the second of day
+     * @param extremes extremes[day] is the extreme status of the day, bit i for the i-th time
+     */
+    Timetable(int startYear, int startMonth, int startDay, int[] times, int[] extremes) {
+        this.startYear = startYear;
+        this.startMonth = startMonth;
+        this.startDay = startDay;
+        this.startEpochDay = toEpochDay(startYear, startMonth, startDay);
+        this.days = extremes.length;
+
+        boolean wholeMinutes = true;
+        for (int t : times) {
+            if (t != PrayerTime.INVALID && t % 60 != 0) {
+                wholeMinutes = false;
+                break;
+            }
+        }
+        if (wholeMinutes) {
+            this.minutes = new short[times.length];
+            for (int i = 0; i < times.length; ++i)
+                this.minutes[i] = (short) (times[i] == PrayerTime.INVALID ? -1 : times[i] / 60);
+            this.seconds = null;
+        } else {
+            this.minutes = null;
+            this.seconds = times.clone();
+        }
+
+        this.extremes = new long[(days * TIMES_PER_DAY + 63) >>> 6];
+        for (int d = 0; d < days; ++d) {
+            for (int i = 0; i < TIMES_PER_DAY; ++i) {
+                if ((extremes[d] & (1 << i)) != 0) {
+                    int bit = d * TIMES_PER_DAY + i;
+                    this.extremes[bit >>> 6] |= 1L << bit;
+                }
+            }
+        }
+    }
+
+    public int getStartYear() {
+        return startYear;
+    }
+
+    /**
+     * @return month of the first day (1-12)
+     */
+    public int getStartMonth() {
+        return startMonth;
+    }
+
+    public int getStartDay() {
+        return startDay;
+    }
+
+    /**
+     * @return number of days
+     */
+    public int getDays() {
+        return days;
+    }
+
+    /**
+     * @param month 1-12
+     * @return index of the date in this timetable, may be out of range
+     */
+    public int getDayIndex(int year, int month, int day) {
+        return toEpochDay(year, month, day) - startEpochDay;
+    }
+
+    /**
+     * @param day  index of the day, 0 for the first one
+     * @param type one of Fajr, Shurooq, Zuhr, Assr, Maghrib, Ishaa
+     * @return second of day, see {@link PrayerTime#getSecondOfDay()}
+     * @throws IndexOutOfBoundsException if the day or the type is out of range
+     */
+    public int getSecondOfDay(int day, TimeType type) {
+        int i = index(day, type);
+        if (minutes == null)
+            return seconds[i];
+        short m = minutes[i];
+        return m == -1 ? PrayerTime.INVALID : m * 60;
+    }
+
+    /**
+     * @see #getSecondOfDay(int, TimeType)
+     * @see PrayerTime#isExtreme()
+     */
+    public boolean isExtreme(int day, TimeType type) {
+        int bit = index(day, type);
+        return (extremes[bit >>> 6] & (1L << bit)) != 0;
+    }
+
+    /**
+     * @return new object of the time
+     * @see #getSecondOfDay(int, TimeType)
+     */
+    public PrayerTime getPrayerTime(int day, TimeType type) {
+        return new PrayerTime(getSecondOfDay(day, type), isExtreme(day, type));
+    }
+
+    /**
+     * @return new objects of time of Fajr, Shurooq, Zuhr, Assr, Maghrib, Ishaa respectively
+     * @see #getSecondOfDay(int, TimeType)
+     */
+    public PrayerTime[] getPrayerTimes(int day) {
+        PrayerTime[] result = new PrayerTime[TIMES_PER_DAY];
+        TimeType[] types = TimeType.values();
+        for (int i = 0; i < TIMES_PER_DAY; ++i)
+            result[i] = getPrayerTime(day, types[i]);
+        return result;
+    }
+
+    private int index(int day, TimeType type) {
+        if (day < 0 || day >= days)
+            throw new IndexOutOfBoundsException("Day: " + day + ", days: " + days);
+        if (type.ordinal() >= TIMES_PER_DAY)
+            throw new IndexOutOfBoundsException("Type: " + type);
+        return day * TIMES_PER_DAY + type.ordinal();
+    }
+
+    /**
+     * Days since 1970-01-01 of a date in the proleptic Gregorian calendar
+     *
+     * @param month 1-12
+     */
+    static int toEpochDay(int year, int month, int day) {
+        int y = month <= 2 ? year - 1 : year;
+        int era = (y >= 0 ? y : y - 399) / 400;
+        int yoe = y - era * 400;
+        int doy = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        int doe = yoe * 365 + yoe / 4 - yoe / 100 + doy;
+        return era * 146097 + doe - 719468;
+    }
+
+    /**
+     * Inverse of {@link #toEpochDay(int, int, int)}
+     */
+    static void fromEpochDay(int epochDay, PrayerModule.SDate date) {
+        int z = epochDay + 719468;
+        int era = (z >= 0 ? z : z - 146096) / 146097;
+        int doe = z - era * 146097;
+        int yoe = (doe - doe / 1460 + doe / 36524 - doe / 146096) / 365;
+        int doy = doe - (365 * yoe + yoe / 4 - yoe / 100);
+        int mp = (5 * doy + 2) / 153;
+        date.day = doy - (153 * mp + 2) / 5 + 1;
+        date.month = mp < 10 ? mp + 3 : mp - 9;
+        date.year = yoe + era * 400 + (date.month <= 2 ? 1 : 0);
+    }
+}
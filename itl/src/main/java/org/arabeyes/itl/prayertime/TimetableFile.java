@@ -0,0 +1,445 @@
+/* Copyright (c) 2017, Fikrul Arif
+ * (under LGPL license - see COPYING file)
+ */
+package org.arabeyes.itl.prayertime;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+
+/**
+ * File of precomputed timetables of many locations for the same days and method. The file is
+ * memory-mapped, so the times are read directly from the page cache without creating
+ * {@link PrayerTime} objects or recalculating. The file can be larger than 2 GB.
+ * <p>
+ * Format (big-endian, strings in modified UTF-8 of {@link DataOutputStream#writeUTF}):
+ * <pre>
+ * header:   magic "ITLM", version (int), location index position (long), location count (int),
+ *           start year (int), start month (byte), start day (byte), days (int),
+ *           unit (byte, 60 for minutes or 1 for seconds),
+ *           method: standard method name (empty if none), Fajr, Ishaa, and Imsaak angles
+ *           (double), Fajr, Ishaa, and Imsaak intervals (int), rounding name, mathhab name,
+ *           nearest latitude (double), extreme method name (empty if none), extreme latitude
+ *           (double), offset switch (int), 6 offsets (double), ephemeris name
+ * records:  for each location, for each day: 6 times (short minute of day or int second of
+ *           day, -1 if invalid), extreme status (byte, bit i for the i-th time)
+ * index:    for each location: name, latitude, longitude, height above sea level (double)
+ * </pre>
+ * A time is stored in minutes if the rounding of the method is not {@link Rounding#NONE}.
+ * <p>
+ * Instances are thread-safe. The mapped memory is released by the garbage collector, not by
+ * {@link #close()}.
+ */
+@SuppressWarnings("WeakerAccess")
+public final class TimetableFile implements Closeable {
+
+    private static final int MAGIC = 0x49544c4d; /* "ITLM" */
+    private static final int VERSION = 1;
+    private static final int TIMES_PER_DAY = 6;
+    private static final int SEGMENT_BYTES = 1 << 30;
+
+    private final RandomAccessFile file;
+    private final Method method;
+    private final int startYear;
+    private final int startMonth;
+    private final int startDay;
+    private final int days;
+    private final int unit;
+    private final int recordBytes;
+    private final int segmentRecords;
+    private final MappedByteBuffer[] segments;
+    private final String[] names;
+    private final double[] lat;
+    private final double[] lon;
+    private final double[] seaLevel;
+    private final HashMap<String, Integer> nameIndex;
+
+    private TimetableFile(File f) throws IOException {
+        file = new RandomAccessFile(f, "r");
+        try {
+            if (file.readInt() != MAGIC || file.readInt() != VERSION)
+                throw new IOException("Unknown format of " + f);
+            long indexPosition = file.readLong();
+            int locations = file.readInt();
+            startYear = file.readInt();
+            startMonth = file.readByte();
+            startDay = file.readByte();
+            days = file.readInt();
+            unit = file.readByte();
+            if (unit != 60 && unit != 1)
+                throw new IOException("Unknown unit " + unit + " of " + f);
+            method = readMethod(file);
+            /* The records start right after what is read, as written */
+            long dataPosition = file.getFilePointer();
+
+            recordBytes = recordBytes(unit);
+            segmentRecords = SEGMENT_BYTES / recordBytes;
+
+            FileChannel channel = file.getChannel();
+            long records = (long) locations * days;
+            segments = new MappedByteBuffer[(int) ((records + segmentRecords - 1) /
+                    segmentRecords)];
+            for (int i = 0; i < segments.length; ++i) {
+                long first = (long) i * segmentRecords;
+                long size = Math.min(segmentRecords, records - first) * recordBytes;
+                segments[i] = channel.map(FileChannel.MapMode.READ_ONLY,
+                        dataPosition + first * recordBytes, size);
+            }
+
+            FileInputStream indexIn = new FileInputStream(f);
+            DataInputStream index = new DataInputStream(new BufferedInputStream(indexIn));
+            try {
+                indexIn.getChannel().position(indexPosition);
+                names = new String[locations];
+                lat = new double[locations];
+                lon = new double[locations];
+                seaLevel = new double[locations];
+                nameIndex = new HashMap<String, Integer>(locations * 2);
+                for (int i = 0; i < locations; ++i) {
+                    names[i] = index.readUTF();
+                    lat[i] = index.readDouble();
+                    lon[i] = index.readDouble();
+                    seaLevel[i] = index.readDouble();
+                    nameIndex.put(names[i], i);
+                }
+            } finally {
+                index.close();
+            }
+        } catch (IOException e) {
+            file.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Opens a file written by {@link Writer}.
+     */
+    public static TimetableFile open(File file) throws IOException {
+        return new TimetableFile(file);
+    }
+
+    private static int recordBytes(int unit) {
+        return (unit == 60 ? 2 : 4) * TIMES_PER_DAY + 1;
+    }
+
+    /**
+     * @return copy of the method used to calculate the times
+     */
+    public Method getMethod() {
+        return new Method(method);
+    }
+
+    public int getStartYear() {
+        return startYear;
+    }
+
+    /**
+     * @return month of the first day (1-12)
+     */
+    public int getStartMonth() {
+        return startMonth;
+    }
+
+    public int getStartDay() {
+        return startDay;
+    }
+
+    /**
+     * @return number of days of each location
+     */
+    public int getDays() {
+        return days;
+    }
+
+    /**
+     * @see Timetable#getDayIndex(int, int, int)
+     */
+    public int getDayIndex(int year, int month, int day) {
+        return Timetable.toEpochDay(year, month, day) -
+                Timetable.toEpochDay(startYear, startMonth, startDay);
+    }
+
+    public int getLocationCount() {
+        return names.length;
+    }
+
+    /**
+     * @return index of the location with the name, or -1 if not found
+     */
+    public int findLocation(String name) {
+        Integer i = nameIndex.get(name);
+        return i != null ? i : -1;
+    }
+
+    public String getLocationName(int location) {
+        return names[location];
+    }
+
+    public double getLatitude(int location) {
+        return lat[location];
+    }
+
+    public double getLongitude(int location) {
+        return lon[location];
+    }
+
+    public double getSeaLevel(int location) {
+        return seaLevel[location];
+    }
+
+    /**
+     * @param location index of the location
+     * @param day      index of the day, 0 for the first one
+     * @param type     one of Fajr, Shurooq, Zuhr, Assr, Maghrib, Ishaa
+     * @return second of day, see {@link PrayerTime#getSecondOfDay()}
+     * @throws IndexOutOfBoundsException if an argument is out of range
+     */
+    public int getSecondOfDay(int location, int day, TimeType type) {
+        long record = record(location, day, type);
+        MappedByteBuffer segment = segments[(int) (record / segmentRecords)];
+        int position = (int) (record % segmentRecords) * recordBytes;
+        if (unit == 60) {
+            short m = segment.getShort(position + type.ordinal() * 2);
+            return m == -1 ? PrayerTime.INVALID : m * 60;
+        } else {
+            return segment.getInt(position + type.ordinal() * 4);
+        }
+    }
+
+    /**
+     * @see #getSecondOfDay(int, int, TimeType)
+     * @see PrayerTime#isExtreme()
+     */
+    public boolean isExtreme(int location, int day, TimeType type) {
+        return (getExtremes(record(location, day, type)) & (1 << type.ordinal())) != 0;
+    }
+
+    /**
+     * @return new objects of time of Fajr, Shurooq, Zuhr, Assr, Maghrib, Ishaa respectively
+     * @see #getSecondOfDay(int, int, TimeType)
+     */
+    public PrayerTime[] getPrayerTimes(int location, int day) {
+        int extremes = getExtremes(record(location, day, TimeType.FAJR));
+        PrayerTime[] result = new PrayerTime[TIMES_PER_DAY];
+        TimeType[] types = TimeType.values();
+        for (int i = 0; i < TIMES_PER_DAY; ++i)
+            result[i] = new PrayerTime(getSecondOfDay(location, day, types[i]),
+                    (extremes & (1 << i)) != 0);
+        return result;
+    }
+
+    private int getExtremes(long record) {
+        MappedByteBuffer segment = segments[(int) (record / segmentRecords)];
+        int position = (int) (record % segmentRecords) * recordBytes;
+        return segment.get(position + recordBytes - 1) & 0xff;
+    }
+
+    private long record(int location, int day, TimeType type) {
+        if (location < 0 || location >= names.length)
+            throw new IndexOutOfBoundsException("Location: " + location);
+        if (day < 0 || day >= days)
+            throw new IndexOutOfBoundsException("Day: " + day + ", days: " + days);
+        if (type.ordinal() >= TIMES_PER_DAY)
+            throw new IndexOutOfBoundsException("Type: " + type);
+        return (long) location * days + day;
+    }
+
+    @Override
+    public void close() throws IOException {
+        file.close();
+    }
+
+    private static String name(Enum<?> e) {
+        return e != null ? e.name() : "";
+    }
+
+    private static void writeMethod(DataOutputStream out, Method m) throws IOException {
+        out.writeUTF(name(m.method));
+        out.writeDouble(m.fajrAng);
+        out.writeDouble(m.ishaaAng);
+        out.writeDouble(m.imsaakAng);
+        out.writeInt(m.fajrInv);
+        out.writeInt(m.ishaaInv);
+        out.writeInt(m.imsaakInv);
+        out.writeUTF(name(m.round));
+        out.writeUTF(name(m.mathhab));
+        out.writeDouble(m.nearestLat);
+        out.writeUTF(name(m.extreme));
+        out.writeDouble(m.extremeLat);
+        out.writeInt(m.offset);
+        for (int i = 0; i < TIMES_PER_DAY; ++i)
+            out.writeDouble(m.offList[i]);
+        out.writeUTF(name(m.ephemeris));
+    }
+
+    private static Method readMethod(DataInput in) throws IOException {
+        try {
+            Method m = new Method();
+            String s = in.readUTF();
+            m.method = s.isEmpty() ? null : StandardMethod.valueOf(s);
+            m.fajrAng = in.readDouble();
+            m.ishaaAng = in.readDouble();
+            m.imsaakAng = in.readDouble();
+            m.fajrInv = in.readInt();
+            m.ishaaInv = in.readInt();
+            m.imsaakInv = in.readInt();
+            m.round = Rounding.valueOf(in.readUTF());
+            m.mathhab = Mathhab.valueOf(in.readUTF());
+            m.nearestLat = in.readDouble();
+            s = in.readUTF();
+            m.extreme = s.isEmpty() ? null : ExtremeMethod.valueOf(s);
+            m.extremeLat = in.readDouble();
+            m.offset = in.readInt();
+            m.offList = new double[TIMES_PER_DAY];
+            for (int i = 0; i < TIMES_PER_DAY; ++i)
+                m.offList[i] = in.readDouble();
+            m.ephemeris = Ephemeris.valueOf(in.readUTF());
+            return m;
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Unknown method: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Writes a timetable file. Add the timetables of the locations one by one, then close the
+     * writer.
+     */
+    public static final class Writer implements Closeable {
+        private final File file;
+        private final DataOutputStream out;
+        private final int startYear;
+        private final int startMonth;
+        private final int startDay;
+        private final int days;
+        private final int unit;
+        /* Location index, written on close */
+        private final ByteArrayOutputStream indexBytes = new ByteArrayOutputStream();
+        private final DataOutputStream index = new DataOutputStream(indexBytes);
+        private int locations;
+        private boolean closed;
+
+        /**
+         * @param method     method used to calculate the timetables
+         * @param startMonth 1-12
+         * @param days       number of days of each timetable
+         */
+        public Writer(File file, Method method, int startYear, int startMonth, int startDay,
+                      int days) throws IOException {
+            this.file = file;
+            this.startYear = startYear;
+            this.startMonth = startMonth;
+            this.startDay = startDay;
+            this.days = days;
+            this.unit = method.round == Rounding.NONE ? 1 : 60;
+
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file),
+                    1 << 16));
+            try {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeLong(0); /* Location index position, written on close */
+                out.writeInt(0);  /* Location count, written on close */
+                out.writeInt(startYear);
+                out.writeByte(startMonth);
+                out.writeByte(startDay);
+                out.writeInt(days);
+                out.writeByte(unit);
+                writeMethod(out, method);
+            } catch (IOException e) {
+                closeQuietly();
+                throw e;
+            } catch (RuntimeException e) {
+                closeQuietly();
+                throw e;
+            }
+        }
+
+        private void closeQuietly() {
+            try {
+                out.close();
+            } catch (IOException ignored) {
+                /* The original exception is more useful */
+            }
+        }
+
+        /**
+         * @param timetable times of the location, must start from the same date and have the
+         *                  same number of days as this file
+         * @throws IllegalArgumentException if the timetable doesn't match, or has seconds while
+         *                                  the file is in minutes; nothing is written then
+         */
+        public void add(String name, double lat, double lon, double seaLevel,
+                        Timetable timetable) throws IOException {
+            if (timetable.getStartYear() != startYear || timetable.getStartMonth() != startMonth ||
+                    timetable.getStartDay() != startDay || timetable.getDays() != days)
+                throw new IllegalArgumentException("Timetable doesn't match the file");
+
+            /* Checked before writing anything, so a rejected timetable leaves the file intact */
+            TimeType[] types = TimeType.values();
+            if (unit == 60) {
+                for (int d = 0; d < days; ++d) {
+                    for (int i = 0; i < TIMES_PER_DAY; ++i) {
+                        int t = timetable.getSecondOfDay(d, types[i]);
+                        if (t != PrayerTime.INVALID && t % 60 != 0)
+                            throw new IllegalArgumentException("Time with seconds, but the " +
+                                    "rounding of the method is not NONE");
+                    }
+                }
+            }
+
+            for (int d = 0; d < days; ++d) {
+                int extremes = 0;
+                for (int i = 0; i < TIMES_PER_DAY; ++i) {
+                    int t = timetable.getSecondOfDay(d, types[i]);
+                    if (unit == 60)
+                        out.writeShort(t == PrayerTime.INVALID ? -1 : t / 60);
+                    else out.writeInt(t);
+                    if (timetable.isExtreme(d, types[i]))
+                        extremes |= 1 << i;
+                }
+                out.writeByte(extremes);
+            }
+
+            index.writeUTF(name);
+            index.writeDouble(lat);
+            index.writeDouble(lon);
+            index.writeDouble(seaLevel);
+            locations++;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed)
+                return;
+            closed = true;
+            try {
+                indexBytes.writeTo(out);
+            } finally {
+                out.close();
+            }
+            /* DataOutputStream.size() overflows after 2 GB, so take it from the file */
+            long indexPosition = file.length() - indexBytes.size();
+
+            RandomAccessFile raf = new RandomAccessFile(file, "rw");
+            try {
+                raf.seek(8);
+                raf.writeLong(indexPosition);
+                raf.writeInt(locations);
+            } finally {
+                raf.close();
+            }
+        }
+    }
+}
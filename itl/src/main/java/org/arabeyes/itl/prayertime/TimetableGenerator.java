@@ -0,0 +1,193 @@
+/* Copyright (c) 2017, Fikrul Arif
+ * (under LGPL license - see COPYING file)
+ */
+package org.arabeyes.itl.prayertime;
+
+import org.arabeyes.itl.prayertime.AstroModule.Astro;
+import org.arabeyes.itl.prayertime.PrayerModule.CompiledLocation;
+import org.arabeyes.itl.prayertime.PrayerModule.CompiledMethod;
+import org.arabeyes.itl.prayertime.PrayerModule.Location;
+import org.arabeyes.itl.prayertime.PrayerModule.SDate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TimeZone;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Calculate timetables of many locations over many days in parallel. The work is split by
+ * location and by blocks of consecutive days, and each task walks the days of a location in order
+ * with its own window of the sun's values, so each new day only computes one more day of them.
+ * The tasks write into disjoint parts of preallocated arrays, so nothing is merged afterwards and
+ * no object is created for each day. The results are the same as
+ * {@link Prayer#getTimetable(int)} after {@link Prayer#setDate(int, int, int, TimeZone)}.
+ */
+@SuppressWarnings("WeakerAccess")
+public final class TimetableGenerator {
+
+    private static final int TIMES_PER_DAY = 6;
+    /* Size of the tasks, big enough to make the scheduling and the start of the windows cheap */
+    private static final int LOCATIONS_PER_TASK = 16;
+    private static final int DAYS_PER_TASK = 366;
+
+    private TimetableGenerator() {
+    }
+
+    /**
+     * Same as {@link #generate(ExecutorService, Method, int, int, int, int, double[], double[],
+     * double[], TimeZone[], int[], int[])} with a thread for each available processor, which are
+     * stopped before returning.
+     */
+    public static void generate(Method method, int startYear, int startMonth, int startDay,
+                                int days, double[] lat, double[] lon, double[] seaLevel,
+                                TimeZone[] timeZones, int[] times, int[] extremes)
+            throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(
+                Runtime.getRuntime().availableProcessors());
+        try {
+            generate(executor, method, startYear, startMonth, startDay, days, lat, lon, seaLevel,
+                    timeZones, times, extremes);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * @param executor   executor running the tasks, e.g. a fixed thread pool
+     * @param method     calculation method of all locations
+     * @param startYear  year of the first day
+     * @param startMonth month of the first day (1-12)
+     * @param startDay   day of month of the first day
+     * @param days       number of days of each location
+     * @param lat        latitude of each location in decimal degrees
+     * @param lon        longitude of each location in decimal degrees
+     * @param seaLevel   height above sea level of each location in meters
+     * @param timeZones  time zone of each location, followed at noon of each day (see
+     *                   {@link Prayer#setDate(int, int, int, TimeZone)})
+     * @param times      output, times[(i * days + d) * 6 + t] is the time of type t (Fajr,
+     *                   Shurooq, Zuhr, Assr, Maghrib, Ishaa respectively) of day d of location i
+     *                   as second of day (see {@link PrayerTime#getSecondOfDay()})
+     * @param extremes   output, bit t of extremes[i * days + d] is set if the time of type t of
+     *                   day d of location i is calculated through extreme latitude methods (see
+     *                   {@link PrayerTime#isExtreme()})
+     * @throws IllegalArgumentException if "days" is negative or the lengths of the arrays don't
+     *                                  match
+     * @throws InterruptedException     if interrupted while waiting, the remaining tasks are
+     *                                  cancelled
+     */
+    public static void generate(ExecutorService executor, Method method, int startYear,
+                                int startMonth, int startDay, int days, double[] lat,
+                                double[] lon, double[] seaLevel, TimeZone[] timeZones,
+                                int[] times, int[] extremes) throws InterruptedException {
+        int n = lat.length;
+        if (days < 0)
+            throw new IllegalArgumentException("Negative days: " + days);
+        if (lon.length != n || seaLevel.length != n || timeZones.length != n ||
+                extremes.length != (long) n * days ||
+                times.length != (long) n * days * TIMES_PER_DAY)
+            throw new IllegalArgumentException("Array lengths don't match");
+
+        Output output = new Output(method.compile(),
+                Timetable.toEpochDay(startYear, startMonth, startDay), days, lat, lon, seaLevel,
+                timeZones.clone(), times, extremes);
+        List<Block> blocks = new ArrayList<Block>();
+        for (int i = 0; i < n; i += LOCATIONS_PER_TASK) {
+            for (int d = 0; d < days; d += DAYS_PER_TASK) {
+                blocks.add(new Block(output, i, Math.min(i + LOCATIONS_PER_TASK, n), d,
+                        Math.min(d + DAYS_PER_TASK, days)));
+            }
+        }
+
+        for (Future<Void> future : executor.invokeAll(blocks)) {
+            try {
+                future.get();
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException)
+                    throw (RuntimeException) cause;
+                if (cause instanceof Error)
+                    throw (Error) cause;
+                throw new RuntimeException(cause);
+            }
+        }
+    }
+
+    /**
+     * Input and output shared by the tasks of a call
+     */
+    private static final class Output {
+        final CompiledMethod conf;
+        final int startEpochDay;
+        final int days;
+        final double[] lat;
+        final double[] lon;
+        final double[] seaLevel;
+        final TimeZone[] timeZones;
+        final int[] times;
+        final int[] extremes;
+
+        Output(CompiledMethod conf, int startEpochDay, int days, double[] lat, double[] lon,
+               double[] seaLevel, TimeZone[] timeZones, int[] times, int[] extremes) {
+            this.conf = conf;
+            this.startEpochDay = startEpochDay;
+            this.days = days;
+            this.lat = lat;
+            this.lon = lon;
+            this.seaLevel = seaLevel;
+            this.timeZones = timeZones;
+            this.times = times;
+            this.extremes = extremes;
+        }
+    }
+
+    /**
+     * Days [startDay, endDay) of locations [startLocation, endLocation)
+     */
+    private static final class Block implements Callable<Void> {
+        private final Output out;
+        private final int startLocation;
+        private final int endLocation;
+        private final int startDay;
+        private final int endDay;
+
+        Block(Output out, int startLocation, int endLocation, int startDay, int endDay) {
+            this.out = out;
+            this.startLocation = startLocation;
+            this.endLocation = endLocation;
+            this.startDay = startDay;
+            this.endDay = endDay;
+        }
+
+        @Override
+        public Void call() {
+            Location loc = new Location();
+            SDate date = new SDate();
+            Astro astroCache = new Astro();
+            PrayerModule.Scratch work = PrayerModule.getScratch();
+            for (int i = startLocation; i < endLocation; ++i) {
+                loc.degreeLat = out.lat[i];
+                loc.degreeLong = out.lon[i];
+                loc.seaLevel = out.seaLevel[i];
+                CompiledLocation compiled = new CompiledLocation(loc);
+                ZoneOffsets offsets = null;
+                for (int d = startDay; d < endDay; ++d) {
+                    int epochDay = out.startEpochDay + d;
+                    Timetable.fromEpochDay(epochDay, date);
+                    if (offsets == null || offsets.year != date.year)
+                        offsets = ZoneOffsets.get(out.timeZones[i], date.year, ZoneOffsets.NOON);
+                    int k = epochDay - offsets.startEpochDay;
+                    compiled = compiled.withZone(offsets.gmtDiff[k], offsets.dst[k]);
+                    /* The window slides along the days, restarting for each location */
+                    int j = i * out.days + d;
+                    out.extremes[j] = PrayerModule.getPrayerTimes(compiled, out.conf, date,
+                            astroCache, work, out.times, j * TIMES_PER_DAY);
+                }
+            }
+            return null;
+        }
+    }
+}
@@ -0,0 +1,73 @@
+/* Copyright (c) 2017, Fikrul Arif
+ * (under LGPL license - see COPYING file)
+ */
+package org.arabeyes.itl.prayertime;
+
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.TimeZone;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * GMT difference and daylight saving time of each day of a year in a time zone, at a local time
+ * of day, as {@link Prayer#setDate(GregorianCalendar)} would take them: each day is resolved once
+ * by a calendar set to the local date and time, so a local time inside a transition is taken the
+ * same way. The daylight saving time is kept exactly, e.g. half an hour in Lord Howe Island.
+ * <p>
+ * The tables are kept in a direct-mapped table shared by all threads, like {@link Nutation}.
+ */
+final class ZoneOffsets {
+
+    /* Local time of day of the offsets when only the date is given */
+    static final int NOON = 12 * 60 * 60 * 1000;
+
+    private static final int SLOTS = 64;
+    private static final double MILLIS_PER_HOUR = 60 * 60 * 1000;
+
+    private static final AtomicReferenceArray<ZoneOffsets> tables =
+            new AtomicReferenceArray<ZoneOffsets>(SLOTS);
+
+    final TimeZone zone;      /* A clone, never modified */
+    final int year;
+    final int millisOfDay;
+    final int startEpochDay;  /* Of January 1st */
+    final double[] gmtDiff;   /* Of each day in hours */
+    final double[] dst;
+
+    private ZoneOffsets(TimeZone zone, int year, int millisOfDay) {
+        this.zone = zone;
+        this.year = year;
+        this.millisOfDay = millisOfDay;
+        this.startEpochDay = Timetable.toEpochDay(year, 1, 1);
+        int days = Timetable.toEpochDay(year + 1, 1, 1) - startEpochDay;
+        this.gmtDiff = new double[days];
+        this.dst = new double[days];
+
+        /* The local fields are resolved by the calendar itself, so the first day has its own
+         * offset (e.g. a local mean time) and a local time inside a transition is split the same
+         * way. The fields are lenient, so the day 1 + i of January is the day i of the year. */
+        GregorianCalendar calendar = new GregorianCalendar(zone);
+        for (int i = 0; i < days; ++i) {
+            calendar.clear();
+            calendar.set(year, Calendar.JANUARY, 1 + i);
+            calendar.set(Calendar.MILLISECOND, millisOfDay);
+            gmtDiff[i] = calendar.get(Calendar.ZONE_OFFSET) / MILLIS_PER_HOUR;
+            dst[i] = calendar.get(Calendar.DST_OFFSET) / MILLIS_PER_HOUR;
+        }
+    }
+
+    /**
+     * @param millisOfDay local time of day in milliseconds at which the offsets are taken
+     * @return table of the year, shared and must not be modified
+     */
+    static ZoneOffsets get(TimeZone zone, int year, int millisOfDay) {
+        int index = ((zone.getID().hashCode() * 31 + year) * 31 + millisOfDay) & (SLOTS - 1);
+        ZoneOffsets table = tables.get(index);
+        if (table == null || table.year != year || table.millisOfDay != millisOfDay ||
+                !table.zone.equals(zone)) {
+            table = new ZoneOffsets((TimeZone) zone.clone(), year, millisOfDay);
+            tables.set(index, table);
+        }
+        return table;
+    }
+}
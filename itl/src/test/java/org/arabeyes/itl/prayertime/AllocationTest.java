@@ -0,0 +1,79 @@
+/* Copyright (c) 2017, Fikrul Arif
+ * (under LGPL license - see COPYING file)
+ */
+package org.arabeyes.itl.prayertime;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.TimeZone;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Repeated calls over days whose sun's values are cached allocate nothing, see
+ * {@link Prayer#getPrayerTimeSeconds(int[], int)}.
+ */
+public class AllocationTest {
+
+    private static final long FIRST_DAY = 17318; /* 2017-06-01 */
+    private static final int DAYS = 10;
+    private static final int WARM_UP = 20000;
+    private static final int CALLS = 10000;
+
+    private com.sun.management.ThreadMXBean threads;
+
+    @Before
+    public void setUp() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        threads = (com.sun.management.ThreadMXBean) bean;
+        assumeTrue(threads.isThreadAllocatedMemorySupported());
+        threads.setThreadAllocatedMemoryEnabled(true);
+    }
+
+    @Test
+    public void calculatorDoesNotAllocate() {
+        for (ExtremeMethod extreme : ExtremeMethod.values()) {
+            Method method = Method.fromStandard(StandardMethod.MUSLIM_LEAGUE)
+                    .setExtremeMethod(extreme);
+            for (double lat : new double[]{21, 51, 69}) {
+                PrayerCalculator calculator = new PrayerCalculator(lat, 10, 0, method);
+                int[] times = new int[6];
+                for (int i = 0; i < WARM_UP; ++i)
+                    calculator.getPrayerTimeSeconds(FIRST_DAY + i % DAYS, 1, 0, times, 0);
+                long start = getAllocatedBytes();
+                for (int i = 0; i < CALLS; ++i)
+                    calculator.getPrayerTimeSeconds(FIRST_DAY + i % DAYS, 1, 0, times, 0);
+                long allocated = getAllocatedBytes() - start;
+                assertEquals(extreme + " at " + lat, 0, allocated);
+            }
+        }
+    }
+
+    @Test
+    public void prayerDoesNotAllocate() {
+        for (ExtremeMethod extreme : ExtremeMethod.values()) {
+            Prayer prayer = new Prayer()
+                    .setMethod(Method.fromStandard(StandardMethod.EGYPT_SURVEY)
+                            .setExtremeMethod(extreme))
+                    .setLocation(51, 10, 0)
+                    .setDate(2017, 6, 21, TimeZone.getTimeZone("GMT+1"));
+            int[] times = new int[6];
+            for (int i = 0; i < WARM_UP; ++i)
+                prayer.getPrayerTimeSeconds(times, 0);
+            long start = getAllocatedBytes();
+            for (int i = 0; i < CALLS; ++i)
+                prayer.getPrayerTimeSeconds(times, 0);
+            long allocated = getAllocatedBytes() - start;
+            assertEquals(extreme.toString(), 0, allocated);
+        }
+    }
+
+    private long getAllocatedBytes() {
+        return threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+}
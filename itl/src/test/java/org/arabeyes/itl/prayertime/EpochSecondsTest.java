@@ -0,0 +1,64 @@
+/* Copyright (c) 2017, Fikrul Arif
+ * (under LGPL license - see COPYING file)
+ */
+package org.arabeyes.itl.prayertime;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The epoch seconds of a date are never far from it, see
+ * {@link PrayerCalculator#getEpochSeconds(long, double, long[], int)}.
+ */
+public class EpochSecondsTest {
+
+    @Test
+    public void timesAreWithinTheirDay() {
+        StandardMethod[] standards = StandardMethod.values();
+        ExtremeMethod[] extremes = ExtremeMethod.values();
+        Random random = new Random(1);
+        long[] seconds = new long[6];
+        for (int k = 0; k < 20000; ++k) {
+            Method method = Method.fromStandard(standards[random.nextInt(standards.length)])
+                    .setExtremeMethod(extremes[random.nextInt(extremes.length)]);
+            double lat = random.nextDouble() * 178 - 89;
+            double lon = random.nextDouble() * 360 - 180;
+            double gmtDiff = Math.round(lon / 15) + random.nextInt(3) - 1;
+            long epochDay = random.nextInt(40000) - 5000;
+            new PrayerCalculator(lat, lon, random.nextInt(1000), method)
+                    .getEpochSeconds(epochDay, gmtDiff, seconds, 0);
+
+            long midnight = epochDay * 86400 - Math.round(gmtDiff * 3600);
+            for (int i = 0; i < 6; ++i) {
+                long t = seconds[i];
+                assertTrue(method.extreme + " at " + lat + ", " + lon + ", day " + epochDay,
+                        t == PrayerTime.INVALID_EPOCH_SECOND ||
+                                (t >= midnight - PrayerModule.DAY_MARGIN &&
+                                        t < midnight + 86400 + PrayerModule.DAY_MARGIN));
+            }
+        }
+    }
+
+    @Test
+    public void invalidTimeOfNearestLatitudeStaysInvalid() {
+        Method method = Method.fromStandard(StandardMethod.EGYPT_SURVEY)
+                .setExtremeMethod(ExtremeMethod.LAT_ALWAYS);
+        long[] seconds = new long[6];
+        new PrayerCalculator(-22.44, -25.95, 0, method).getEpochSeconds(22428, -2, seconds, 0);
+        assertEquals(PrayerTime.INVALID_EPOCH_SECOND, seconds[0]);
+    }
+
+    @Test
+    public void sunsetFarFromTheDayIsInvalid() {
+        /* The rise and set formula gives a sunset 59 hours after the midnight here */
+        Method method = Method.fromStandard(StandardMethod.EGYPT_NEW)
+                .setExtremeMethod(ExtremeMethod.ANGLE_BASED);
+        long[] seconds = new long[6];
+        new PrayerCalculator(-81.4523, 168.8183, 0, method).getEpochSeconds(21470, 11, seconds, 0);
+        assertEquals(PrayerTime.INVALID_EPOCH_SECOND, seconds[4]);
+    }
+}
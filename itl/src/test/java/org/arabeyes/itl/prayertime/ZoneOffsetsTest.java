@@ -0,0 +1,55 @@
+/* Copyright (c) 2017, Fikrul Arif
+ * (under LGPL license - see COPYING file)
+ */
+package org.arabeyes.itl.prayertime;
+
+import org.junit.Test;
+
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.TimeZone;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * The offsets of {@link ZoneOffsets} are the ones of a calendar set to the local date and time.
+ */
+public class ZoneOffsetsTest {
+
+    private static final String[] ZONES = {"Pacific/Kiritimati", "Pacific/Apia",
+            "America/Juneau", "Asia/Amman", "Africa/Juba", "Australia/Lord_Howe", "Europe/Monaco"};
+    private static final int[] TIMES = {0, 90 * 60 * 1000, ZoneOffsets.NOON, 23 * 60 * 60 * 1000};
+
+    @Test
+    public void sameAsCalendar() {
+        for (String id : ZONES) {
+            TimeZone zone = TimeZone.getTimeZone(id);
+            GregorianCalendar calendar = new GregorianCalendar(zone);
+            for (int millisOfDay : TIMES) {
+                for (int year = 1900; year <= 2040; ++year) {
+                    ZoneOffsets offsets = ZoneOffsets.get(zone, year, millisOfDay);
+                    for (int i = 0; i < offsets.gmtDiff.length; ++i) {
+                        calendar.clear();
+                        calendar.set(year, Calendar.JANUARY, 1 + i, millisOfDay / 3600000,
+                                millisOfDay / 60000 % 60);
+                        String message = id + " " + year + " day " + i + " at " + millisOfDay;
+                        assertEquals(message, calendar.get(Calendar.ZONE_OFFSET) / 3600000d,
+                                offsets.gmtDiff[i], 0);
+                        assertEquals(message, calendar.get(Calendar.DST_OFFSET) / 3600000d,
+                                offsets.dst[i], 0);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidMonth() {
+        new Prayer().setDate(2020, 13, 1, TimeZone.getTimeZone("UTC"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidDay() {
+        new Prayer().setDate(2020, 2, 30, TimeZone.getTimeZone("UTC"));
+    }
+}